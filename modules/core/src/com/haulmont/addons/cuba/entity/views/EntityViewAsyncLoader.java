@@ -0,0 +1,194 @@
+package com.haulmont.addons.cuba.entity.views;
+
+import com.haulmont.addons.cuba.entity.views.global.EntityViewsConfig;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.contracts.Id;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads entity views asynchronously, so independent loads (e.g. a header, its lines and lookups) can run at
+ * the same time:
+ * <pre>
+ * CompletableFuture&lt;OrderView&gt; order = asyncLoader.load(Id.of(orderId, OrderView.class));
+ * CompletableFuture&lt;List&lt;LineView&gt;&gt; lines = asyncLoader.loadList(LineView.class,
+ *         "select l from sales$Line l where l.order.id = :orderId", ParamsMap.of("orderId", orderId));
+ * CompletableFuture.allOf(order, lines).join();
+ * </pre>
+ * Loads run on virtual threads if the JDK supports them, otherwise on a fixed thread pool. In both cases at most
+ * {@link EntityViewsConfig#getAsyncMaxConcurrency()} loads run at the same time. Security context of the caller is passed to the
+ * thread that loads entities, entities are wrapped into entity views on that thread as well.
+ * <br>
+ * Inside a transaction loads are executed on the caller thread and returned futures are already completed, because
+ * the transaction and its uncommitted changes are not visible to other threads.
+ */
+public class EntityViewAsyncLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewAsyncLoader.class);
+
+    public static final String NAME = "entity_views_core_EntityViewAsyncLoader";
+
+    @Inject
+    protected DataManager dataManager;
+
+    @Inject
+    protected ViewsConfiguration viewsConfiguration;
+
+    @Inject
+    protected Persistence persistence;
+
+    @Inject
+    protected EntityViewsConfig entityViewsConfig;
+
+    private volatile ExecutorService executor;
+
+    private volatile Semaphore permits;
+
+    /**
+     * Loads entity view by ID.
+     *
+     * @param entityId ID of an entity view, e.g. <code>Id.of(id, SampleMinimalView.class)</code>.
+     * @param <E>      Entity class.
+     * @param <V>      Entity view interface class.
+     * @param <K>      Entity ID key class.
+     * @return Future completed with the entity view or <code>null</code> if the entity is not found.
+     */
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> CompletableFuture<V> load(Id<V, K> entityId) {
+        return submit(() -> dataManager.load(entityId).optional().orElse(null));
+    }
+
+    /**
+     * Loads entity views using JPQL query.
+     *
+     * @param viewInterface Entity view interface class.
+     * @param queryString   JPQL query.
+     * @param parameters    Query parameters.
+     * @param <E>           Entity class.
+     * @param <V>           Entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return Future completed with the list of entity views.
+     */
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> CompletableFuture<List<V>> loadList(Class<V> viewInterface,
+                                                                                                        String queryString,
+                                                                                                        Map<String, Object> parameters) {
+        ViewsConfigurationBean.ViewInterfaceInfo info = viewsConfiguration.getViewInterfaceDefinition(viewInterface);
+        //noinspection unchecked
+        LoadContext<E> context = LoadContext.create((Class<E>) info.getEntityClass()).setView(info.getView());
+        context.setQuery(LoadContext.createQuery(queryString).setParameters(new HashMap<>(parameters)));
+        return submit(() -> {
+            //noinspection unchecked
+            List<V> views = (List<V>) dataManager.loadList(context);
+            //Copying wraps all elements of a lazily wrapping list on this thread
+            return Collections.unmodifiableList(new ArrayList<>(views));
+        });
+    }
+
+    /**
+     * Runs arbitrary loading code the same way as other loads of this class.
+     *
+     * @param load Code that loads entity views.
+     * @param <T>  Result type.
+     * @return Future completed with the result.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> load) {
+        if (persistence.isInTransaction()) {
+            log.trace("Loading entity views on the caller thread inside a transaction");
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                result.complete(load.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        ExecutorService executor = getExecutor();
+        Semaphore permits = this.permits;
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            SecurityContext previous = AppContext.getSecurityContext();
+            AppContext.setSecurityContext(securityContext);
+            try {
+                return load.get();
+            } finally {
+                AppContext.setSecurityContext(previous);
+                permits.release();
+            }
+        }, executor);
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        ExecutorService current = executor;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    protected ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    int maxConcurrency = getMaxConcurrency();
+                    permits = new Semaphore(maxConcurrency);
+                    result = createExecutor(maxConcurrency);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates virtual thread per task executor if it is supported by the JDK, otherwise a fixed thread pool
+     * of daemon threads.
+     *
+     * @param maxConcurrency Maximum number of loads running at the same time.
+     * @return New executor.
+     */
+    protected ExecutorService createExecutor(int maxConcurrency) {
+        try {
+            ExecutorService result = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.debug("Entity views are loaded asynchronously on virtual threads");
+            return result;
+        } catch (ReflectiveOperationException e) {
+            log.debug("Entity views are loaded asynchronously on {} threads", maxConcurrency);
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "entity-views-async-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return Maximum number of loads running at the same time, see {@link EntityViewsConfig#getAsyncMaxConcurrency()}.
+     */
+    protected int getMaxConcurrency() {
+        return Math.max(1, entityViewsConfig.getAsyncMaxConcurrency());
+    }
+}
@@ -0,0 +1,320 @@
+package com.haulmont.addons.cuba.entity.views;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.View;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loads entity views chunk by chunk, so only one chunk of entities and entity views is held in memory and rows that
+ * were already read can be garbage collected. Created by {@link ViewsSupportDataManagerBean#loadStream(Class)}.
+ * <pre>
+ * try (Stream&lt;InvoiceExportView&gt; invoices = dataManager.loadStream(InvoiceExportView.class).chunkSize(500).stream()) {
+ *     invoices.forEach(exporter::write);
+ * }
+ * </pre>
+ * Without a query all entities are loaded using keyset paging ordered by the primary key. A query is loaded using
+ * <code>firstResult</code> and <code>maxResults</code> paging, so it must define a stable order.
+ *
+ * @param <E> Entity class.
+ * @param <V> Entity view interface class.
+ * @param <K> Entity ID key class.
+ */
+public class EntityViewStreamLoader<E extends Entity<K>, V extends BaseEntityView<E, K>, K> {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewStreamLoader.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final String LAST_ID_PARAMETER = "entityViewsLastId";
+
+    private final DataManager dataManager;
+    private final Class<E> entityClass;
+    private final String entityName;
+    private final String primaryKeyName;
+    private final View view;
+
+    private String queryString;
+    private final Map<String, Object> parameters = new HashMap<>();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    EntityViewStreamLoader(DataManager dataManager, Class<E> entityClass, String entityName, String primaryKeyName, View view) {
+        this.dataManager = dataManager;
+        this.entityClass = entityClass;
+        this.entityName = entityName;
+        this.primaryKeyName = primaryKeyName;
+        this.view = view;
+    }
+
+    /**
+     * Sets JPQL query that selects entities. The query must order results in a stable way.
+     *
+     * @param queryString JPQL query.
+     * @return This loader.
+     */
+    public EntityViewStreamLoader<E, V, K> query(String queryString) {
+        this.queryString = queryString;
+        return this;
+    }
+
+    /**
+     * Sets query parameter.
+     *
+     * @param name  Parameter name.
+     * @param value Parameter value.
+     * @return This loader.
+     */
+    public EntityViewStreamLoader<E, V, K> parameter(String name, Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    /**
+     * @param chunkSize Number of rows loaded by one query, {@link #DEFAULT_CHUNK_SIZE} by default.
+     * @return This loader.
+     */
+    public EntityViewStreamLoader<E, V, K> chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @return Cursor over entity views, should be closed after use.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return Sequential stream of entity views, should be closed after use. Closing the stream closes its cursor.
+     */
+    public Stream<V> stream() {
+        Cursor cursor = cursor();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    /**
+     * Creates Reactive Streams publisher of entity views. Every subscriber gets its own cursor, chunks are loaded
+     * on the thread that requests rows and only when the subscriber's demand is not satisfied by the loaded chunk.
+     *
+     * @return Cold publisher of entity views.
+     */
+    public Publisher<V> publisher() {
+        return subscriber -> {
+            Objects.requireNonNull(subscriber, "Subscriber is null");
+            CursorSubscription subscription = new CursorSubscription(subscriber);
+            subscriber.onSubscribe(subscription);
+        };
+    }
+
+    private List<V> loadChunk(int offset, K lastId) {
+        LoadContext.Query query;
+        if (queryString == null) {
+            String keysetQuery = "select e from " + entityName + " e"
+                    + (lastId != null ? " where e." + primaryKeyName + " > :" + LAST_ID_PARAMETER : "")
+                    + " order by e." + primaryKeyName;
+            query = LoadContext.createQuery(keysetQuery);
+            if (lastId != null) {
+                query.setParameter(LAST_ID_PARAMETER, lastId);
+            }
+        } else {
+            query = LoadContext.createQuery(queryString)
+                    .setParameters(new HashMap<>(parameters))
+                    .setFirstResult(offset);
+        }
+        query.setMaxResults(chunkSize);
+        LoadContext<E> context = LoadContext.create(entityClass).setQuery(query).setView(view);
+        log.debug("Loading chunk of {} rows of {} from row {}", chunkSize, entityName, offset);
+        //noinspection unchecked
+        return (List<V>) dataManager.loadList(context);
+    }
+
+    /**
+     * Iterator that loads the next chunk when the previous one is read. Iteration stops after {@link #close()}
+     * or {@link #cancel()}.
+     */
+    public class Cursor implements Iterator<V>, AutoCloseable {
+
+        private Iterator<V> chunk = Collections.emptyIterator();
+        private int offset;
+        private K lastId;
+        private boolean exhausted;
+        private boolean closed;
+        private volatile boolean cancelled;
+
+        private Cursor() {
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed || cancelled) {
+                return false;
+            }
+            while (!chunk.hasNext()) {
+                if (exhausted) {
+                    return false;
+                }
+                //The previous chunk is released before the next one is loaded
+                chunk = Collections.emptyIterator();
+                List<V> loaded = loadChunk(offset, lastId);
+                exhausted = loaded.size() < chunkSize;
+                if (loaded.isEmpty() || cancelled) {
+                    return false;
+                }
+                chunk = loaded.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            V result = chunk.next();
+            lastId = result.getId();
+            offset++;
+            return result;
+        }
+
+        /**
+         * Stops iteration before the next row, can be called from another thread.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Releases the current chunk and stops iteration.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            chunk = Collections.emptyIterator();
+        }
+
+        /**
+         * @return True if there are no more rows and it is known without loading the next chunk.
+         */
+        private boolean isDrained() {
+            return !chunk.hasNext() && exhausted;
+        }
+    }
+
+    /**
+     * Subscription that emits rows of a cursor according to the subscriber's demand. Rows are emitted by a drain
+     * loop, so <code>request()</code> called from <code>onNext()</code> does not recurse.
+     */
+    private class CursorSubscription implements Subscription {
+
+        private final Subscriber<? super V> subscriber;
+        private final Cursor cursor = cursor();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        CursorSubscription(Subscriber<? super V> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested number of rows must be positive: " + n));
+                return;
+            }
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            cursor.cancel();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand) {
+                    if (cancelled) {
+                        cursor.close();
+                        return;
+                    }
+                    boolean hasNext;
+                    V next = null;
+                    try {
+                        hasNext = cursor.hasNext();
+                        if (hasNext) {
+                            next = cursor.next();
+                        }
+                    } catch (RuntimeException e) {
+                        terminate();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (!hasNext) {
+                        if (!cancelled) {
+                            terminate();
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    subscriber.onNext(next);
+                    emitted++;
+                }
+                if (cancelled) {
+                    cursor.close();
+                    return;
+                }
+                if (cursor.isDrained()) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            cancelled = true;
+            cursor.close();
+        }
+    }
+}
@@ -1,29 +1,75 @@
 package com.haulmont.addons.cuba.entity.views;
 
+import com.google.common.collect.MapMaker;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewProjectionPlan;
 import com.haulmont.addons.cuba.entity.views.factory.EntityViewWrapper;
+import com.haulmont.addons.cuba.entity.views.factory.LazyWrappingList;
+import com.haulmont.addons.cuba.entity.views.global.ViewsSupportEntityStates;
+import com.haulmont.addons.cuba.entity.views.scan.Computed;
+import com.haulmont.addons.cuba.entity.views.scan.EntityViewProjection;
+import com.haulmont.addons.cuba.entity.views.scan.SplitQuery;
 import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
 import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.app.DataManagerBean;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.entity.contracts.Id;
 import com.haulmont.cuba.core.global.CommitContext;
 import com.haulmont.cuba.core.global.EntitySet;
 import com.haulmont.cuba.core.global.FluentLoader;
 import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.ValueLoadContext;
 import com.haulmont.cuba.core.global.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 
 public class ViewsSupportDataManagerBean extends DataManagerBean {
 
+    private static final Logger log = LoggerFactory.getLogger(ViewsSupportDataManagerBean.class);
+
+    //Keeps IN lists of computed values queries within limits of all supported databases
+    private static final int COMPUTED_VALUES_BATCH_SIZE = 500;
+
+    private static final String COMPUTED_ID_PROPERTY = "entityViewsId";
+
+    private static final String COMPUTED_IDS_PARAMETER = "entityViewsIds";
+
     @Inject
     private ViewsConfiguration viewsConfiguration;
 
+    @Inject
+    private EntityViewFactory entityViewFactory;
+
+    @Inject
+    private ViewsSupportEntityStates entityStates;
+
+    //Projection plans by entity views, empty if an entity view cannot be loaded by a scalar projection
+    private final Map<ViewsConfigurationBean.ViewInterfaceInfo, Optional<EntityViewProjectionPlan>> projectionPlans =
+            new MapMaker().weakKeys().makeMap();
+
+    //Reference properties of entity views that lead to nested entity views with computed getters
+    private final Map<ViewsConfigurationBean.ViewInterfaceInfo, Map<String, ViewsConfigurationBean.ViewInterfaceInfo>> computedReferences =
+            new MapMaker().weakKeys().makeMap();
+
     @Override
     public <E extends Entity<K>, K> FluentLoader<E, K> load(Class<E> entityClass) {
         boolean isEntityView = BaseEntityView.class.isAssignableFrom(entityClass);
@@ -42,10 +88,13 @@ public class ViewsSupportDataManagerBean extends DataManagerBean {
     public <E extends Entity> E load(LoadContext<E> context) {
         E entity = super.load(context);
         View contextView = context.getView();
-        if (contextView != null) {
+        if (contextView != null && entity != null) {
+            entityStates.setLoadedWithView(entity, contextView);
             ViewsConfigurationBean.ViewInterfaceInfo viewInfo = viewsConfiguration.getViewInfoByView(contextView);
             if (viewInfo != null) {
-                return (E) EntityViewWrapper.wrap(entity, viewInfo.getViewInterface());
+                loadSplitProperties(Collections.singletonList(entity), viewInfo);
+                loadComputedValues(Collections.singletonList(entity), viewInfo);
+                return (E) entityViewFactory.wrapLoaded(entity, viewInfo.getViewInterface(), contextView);
             }
         }
         return entity;
@@ -69,24 +118,238 @@ public class ViewsSupportDataManagerBean extends DataManagerBean {
 
     @Override
     public <E extends Entity> List<E> loadList(LoadContext<E> context) {
+        List<E> projected = loadProjection(context);
+        if (projected != null) {
+            return projected;
+        }
         List<E> entityList = super.loadList(context);
         View contextView = context.getView();
         if (contextView != null) {
+            entityList.forEach(entity -> entityStates.setLoadedWithView(entity, contextView));
             ViewsConfigurationBean.ViewInterfaceInfo viewInfo = viewsConfiguration.getViewInfoByView(contextView);
             if (viewInfo != null) {
-                entityList = (List<E>) entityList.stream().map(e -> EntityViewWrapper.wrap(e, viewInfo.getViewInterface())).collect(Collectors.toList());
+                loadSplitProperties(entityList, viewInfo);
+                loadComputedValues(entityList, viewInfo);
+                View effectiveView = viewsConfiguration.getEffectiveViewDefinition(viewInfo.getViewInterface()).getView();
+                if (viewsConfiguration.isViewCovered(contextView, effectiveView)) {
+                    //Entities have all attributes, so they are wrapped only when accessed
+                    entityList = new LazyWrappingList(entityList, viewInfo.getViewInterface(), entityViewFactory, contextView);
+                } else {
+                    //Entities loaded with another view than the effective one are reloaded in batches right away
+                    entityList = (List<E>) entityViewFactory.wrapAllPrefetched(entityList, viewInfo.getViewInterface(), contextView);
+                }
             }
         }
         return entityList;
     }
 
+    /**
+     * Loads entity views annotated with {@link EntityViewProjection} by a JPQL scalar projection.
+     *
+     * @param context Load context.
+     * @param <E>     Entity class.
+     * @return Entity views backed by projection rows or <code>null</code> if the context does not load such entity
+     * views, the entity view is not eligible, the query cannot be rewritten or has a condition, sorting or
+     * previous queries.
+     */
+    @Nullable
+    protected <E extends Entity> List<E> loadProjection(LoadContext<E> context) {
+        View contextView = context.getView();
+        LoadContext.Query query = context.getQuery();
+        if (contextView == null || query == null || query.getQueryString() == null
+                || (context.getIds() != null && !context.getIds().isEmpty()) || context.isLoadDynamicAttributes()) {
+            return null;
+        }
+        //Conditions, sorting and previous queries are applied to the entity query by the store, not to the projection
+        if (query.getCondition() != null || query.getSort() != null
+                || !context.getPrevQueries().isEmpty() || context.getQueryKey() != 0) {
+            return null;
+        }
+        ViewsConfigurationBean.ViewInterfaceInfo viewInfo = viewsConfiguration.getViewInfoByView(contextView);
+        if (viewInfo == null || !viewInfo.getViewInterface().isAnnotationPresent(EntityViewProjection.class)) {
+            return null;
+        }
+        EntityViewProjectionPlan<?> plan = projectionPlans
+                .computeIfAbsent(viewInfo, info -> Optional.ofNullable(EntityViewProjectionPlan.create(info, viewsConfiguration, metadata)))
+                .orElse(null);
+        String projectionQuery = plan != null ? plan.createQuery(query.getQueryString()) : null;
+        if (projectionQuery == null) {
+            log.debug("Entity view {} is loaded without projection", viewInfo.getViewInterface().getName());
+            return null;
+        }
+        ValueLoadContext.Query valueQuery = ValueLoadContext.createQuery(projectionQuery)
+                .setParameters(query.getParameters() != null ? query.getParameters() : Collections.emptyMap());
+        if (query.getFirstResult() > 0) {
+            valueQuery.setFirstResult(query.getFirstResult());
+        }
+        if (query.getMaxResults() > 0) {
+            valueQuery.setMaxResults(query.getMaxResults());
+        }
+        ValueLoadContext valueContext = ValueLoadContext.create()
+                .setQuery(valueQuery)
+                .setProperties(plan.getValueNames())
+                .setSoftDeletion(context.isSoftDeletion())
+                .setAuthorizationRequired(context.isAuthorizationRequired());
+        List<KeyValueEntity> rows = loadValues(valueContext);
+        List<E> result = new ArrayList<>(rows.size());
+        for (KeyValueEntity row : rows) {
+            //noinspection unchecked
+            result.add((E) plan.wrap(row));
+        }
+        return result;
+    }
+
+    /**
+     * Loads collections that are not nested into the view of the entity view, see {@link SplitQuery}. Every collection
+     * is loaded for all entities with one query per batch of parent IDs, so rows of different collections are not
+     * multiplied by each other.
+     *
+     * @param entities Entities loaded with the view of the entity view.
+     * @param viewInfo Entity view the entities were loaded for.
+     */
+    protected void loadSplitProperties(Collection<? extends Entity> entities, ViewsConfigurationBean.ViewInterfaceInfo viewInfo) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        for (String property : viewInfo.getSplitProperties()) {
+            entityViewFactory.loadProperty(entities, property, viewInfo.getLazyViews().get(property));
+        }
+    }
+
+    /**
+     * Evaluates {@link Computed} getters of the entity view and of nested entity views of its references for loaded
+     * entities with one scalar query per entity view and batch of {@link #COMPUTED_VALUES_BATCH_SIZE} IDs,
+     * collections used by the expressions are not loaded.
+     *
+     * @param entities Entities loaded for the entity view.
+     * @param viewInfo Entity view the entities were loaded for.
+     */
+    protected void loadComputedValues(Collection<? extends Entity> entities, ViewsConfigurationBean.ViewInterfaceInfo viewInfo) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        loadOwnComputedValues(entities, viewInfo);
+        Map<String, ViewsConfigurationBean.ViewInterfaceInfo> references =
+                computedReferences.computeIfAbsent(viewInfo, info -> findComputedReferences(info, new HashSet<>()));
+        for (Map.Entry<String, ViewsConfigurationBean.ViewInterfaceInfo> reference : references.entrySet()) {
+            List<Entity> nested = new ArrayList<>();
+            for (Entity entity : entities) {
+                if (entity == null || !entityStates.isLoaded(entity, reference.getKey())) {
+                    continue;
+                }
+                Object value = entity.getValue(reference.getKey());
+                if (value instanceof Entity) {
+                    nested.add((Entity) value);
+                } else if (value instanceof Collection) {
+                    for (Object element : (Collection<?>) value) {
+                        if (element instanceof Entity) {
+                            nested.add((Entity) element);
+                        }
+                    }
+                }
+            }
+            loadComputedValues(nested, reference.getValue());
+        }
+    }
+
+    /**
+     * Finds reference properties whose entity views or their nested entity views have computed getters.
+     *
+     * @param viewInfo Entity view.
+     * @param path     Entity views being inspected, they are skipped to stop on cyclic references.
+     * @return Nested entity views by property names.
+     */
+    private Map<String, ViewsConfigurationBean.ViewInterfaceInfo> findComputedReferences(ViewsConfigurationBean.ViewInterfaceInfo viewInfo,
+                                                                                         Set<Class<?>> path) {
+        Map<String, ViewsConfigurationBean.ViewInterfaceInfo> result = new HashMap<>();
+        path.add(viewInfo.getViewInterface());
+        for (Method method : viewInfo.getViewInterface().getMethods()) {
+            if (method.getParameterCount() != 0 || method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            Class<?> returnViewType = EntityViewWrapper.getReturnViewType(method);
+            String propertyName = EntityViewWrapper.getPropertyName(method);
+            if (!BaseEntityView.class.isAssignableFrom(returnViewType) || propertyName == null) {
+                continue;
+            }
+            //noinspection unchecked
+            ViewsConfigurationBean.ViewInterfaceInfo refInfo =
+                    viewsConfiguration.getEffectiveViewDefinition((Class<? extends BaseEntityView>) returnViewType);
+            if (!path.contains(refInfo.getViewInterface())
+                    && (!refInfo.getComputedExpressions().isEmpty() || !findComputedReferences(refInfo, path).isEmpty())) {
+                result.put(propertyName, refInfo);
+            }
+        }
+        path.remove(viewInfo.getViewInterface());
+        return result;
+    }
+
+    private void loadOwnComputedValues(Collection<? extends Entity> entities, ViewsConfigurationBean.ViewInterfaceInfo viewInfo) {
+        Map<String, String> expressions = viewInfo.getComputedExpressions();
+        if (expressions.isEmpty()) {
+            return;
+        }
+        MetaClass metaClass = metadata.getClassNN(viewInfo.getEntityClass());
+        String primaryKeyName = metadata.getTools().getPrimaryKeyName(metaClass);
+        StringBuilder queryString = new StringBuilder("select e.").append(primaryKeyName);
+        List<String> properties = new ArrayList<>(expressions.size() + 1);
+        properties.add(COMPUTED_ID_PROPERTY);
+        for (Map.Entry<String, String> expression : expressions.entrySet()) {
+            queryString.append(", ").append(expression.getValue().replace(Computed.ENTITY_ALIAS, "e"));
+            properties.add(expression.getKey());
+        }
+        queryString.append(" from ").append(metaClass.getName())
+                .append(" e where e.").append(primaryKeyName).append(" in :").append(COMPUTED_IDS_PARAMETER);
+
+        Map<Object, Entity> entitiesById = new LinkedHashMap<>();
+        for (Entity entity : entities) {
+            if (entity != null && entity.getId() != null) {
+                entitiesById.put(entity.getId(), entity);
+            }
+        }
+        List<Object> ids = new ArrayList<>(entitiesById.keySet());
+        for (int from = 0; from < ids.size(); from += COMPUTED_VALUES_BATCH_SIZE) {
+            List<Object> batch = ids.subList(from, Math.min(from + COMPUTED_VALUES_BATCH_SIZE, ids.size()));
+            log.debug("Loading computed values of {} for {} entities", viewInfo.getViewInterface().getName(), batch.size());
+            ValueLoadContext context = ValueLoadContext.create()
+                    .setQuery(ValueLoadContext.createQuery(queryString.toString()).setParameter(COMPUTED_IDS_PARAMETER, new ArrayList<>(batch)))
+                    .setProperties(properties);
+            for (KeyValueEntity row : loadValues(context)) {
+                Entity entity = entitiesById.get(row.getValue(COMPUTED_ID_PROPERTY));
+                if (entity != null) {
+                    Map<String, Object> values = new HashMap<>(expressions.size());
+                    for (String property : expressions.keySet()) {
+                        values.put(property, row.getValue(property));
+                    }
+                    entityStates.setComputedValues(entity, values);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates loader that streams entity views chunk by chunk instead of holding all of them in memory.
+     *
+     * @param viewInterface Entity view interface class.
+     * @param <E>           Entity class.
+     * @param <V>           Entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return Streaming loader.
+     */
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> EntityViewStreamLoader<E, V, K> loadStream(Class<V> viewInterface) {
+        ViewsConfigurationBean.ViewInterfaceInfo viewInterfaceDefinition = viewsConfiguration.getViewInterfaceDefinition(viewInterface);
+        MetaClass metaClass = metadata.getClassNN(viewInterfaceDefinition.getEntityClass());
+        return new EntityViewStreamLoader<>(this, (Class<E>) viewInterfaceDefinition.getEntityClass(), metaClass.getName(),
+                metadata.getTools().getPrimaryKeyName(metaClass), viewInterfaceDefinition.getView());
+    }
+
     @Override
     public <E extends Entity> E commit(E entity, @Nullable View view) {
         CommitContext context = new CommitContext().addInstanceToCommit(entity, view);
         EntitySet commit = commit(context);
         if (entity instanceof BaseEntityView) {
             Entity committedEntity = commit.get(((BaseEntityView) entity).getOrigin());
-            BaseEntityView entityView = EntityViewWrapper.wrap(committedEntity, ((BaseEntityView) entity).getInterfaceClass());
+            BaseEntityView entityView = entityViewFactory.wrap(committedEntity, ((BaseEntityView) entity).getInterfaceClass());
             return (E) entityView;
         }
         return commit.get(entity);
@@ -96,20 +359,14 @@ public class ViewsSupportDataManagerBean extends DataManagerBean {
     @Override
     public EntitySet commit(CommitContext context) {
 
-        Collection<Entity> entitiesToCommit = context.getCommitInstances().stream().map(e -> {
-                    if (e instanceof BaseEntityView)
-                        return ((BaseEntityView) e).getOrigin();
-                    else return e;
-                }
-        ).collect(Collectors.toList());
+        Collection<Entity> entitiesToCommit = context.getCommitInstances().stream()
+                .map(e -> entityViewFactory.<Entity>unwrap(e))
+                .collect(Collectors.toList());
         context.setCommitInstances(entitiesToCommit);
 
-        Collection<Entity> entitiesToRemove = context.getRemoveInstances().stream().map(e -> {
-                    if (e instanceof BaseEntityView)
-                        return ((BaseEntityView) e).getOrigin();
-                    else return e;
-                }
-        ).collect(Collectors.toList());
+        Collection<Entity> entitiesToRemove = context.getRemoveInstances().stream()
+                .map(e -> entityViewFactory.<Entity>unwrap(e))
+                .collect(Collectors.toList());
         context.setRemoveInstances(entitiesToRemove);
 
         EntitySet commitSet = super.commit(context);
@@ -119,9 +376,7 @@ public class ViewsSupportDataManagerBean extends DataManagerBean {
 
     @Override
     public void remove(Entity entity) {
-        Entity entityToRemove =
-                entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity;
-        super.remove(entityToRemove);
+        super.remove(entityViewFactory.<Entity>unwrap(entity));
     }
 
     @Override
@@ -130,7 +385,7 @@ public class ViewsSupportDataManagerBean extends DataManagerBean {
             ViewsConfigurationBean.ViewInterfaceInfo viewInterfaceDefinition
                     = viewsConfiguration.getViewInterfaceDefinition((Class<BaseEntityView>) entityClass);
             Entity entity = super.create(viewInterfaceDefinition.getEntityClass());
-            return (T) EntityViewWrapper.wrap(
+            return (T) entityViewFactory.wrap(
                     entity, viewInterfaceDefinition.getViewInterface());
         }
         return super.create(entityClass);
@@ -0,0 +1,46 @@
+package com.haulmont.addons.cuba.entity.views;
+
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactoryBean;
+import com.haulmont.addons.cuba.entity.views.global.EntityViewsConfig;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+/**
+ * Middleware {@link com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory} implementation. If an entity
+ * view needs attributes missing in a managed entity inside a transaction, the entity is used as is and missing
+ * attributes are loaded lazily by JPA through the current persistence context instead of a separate
+ * <code>DataManager</code> load.
+ * <br>
+ * Detached entities, entities outside a transaction, or all entities if {@link EntityViewsConfig#getTransactionalLoading()}
+ * is <code>false</code>, get missing attributes merged by data manager as in other tiers, so entity views keep
+ * referring to the same instances.
+ */
+public class ViewsSupportEntityViewFactoryBean extends EntityViewFactoryBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewsSupportEntityViewFactoryBean.class);
+
+    @Inject
+    protected Persistence persistence;
+
+    @Override
+    protected <E extends Entity> E reload(E entity, View view) {
+        if (isTransactionalLoading() && persistence.isInTransaction() && entityStates.isManaged(entity)) {
+            log.trace("Entity {} is managed, missing attributes of view {} are loaded lazily", entity, view);
+            return entity;
+        }
+        return super.reload(entity, view);
+    }
+
+    /**
+     * @return True if missing attributes are loaded through the persistence context inside a transaction,
+     * see {@link EntityViewsConfig#getTransactionalLoading()}.
+     */
+    protected boolean isTransactionalLoading() {
+        return entityViewsConfig.getTransactionalLoading();
+    }
+}
@@ -0,0 +1,16 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.EntityParameter;
+
+import java.util.UUID;
+
+public interface ParameterWithCompEntity extends BaseEntityView<EntityParameter, UUID> {
+
+    String getName();
+
+    Long getParamValue();
+
+    SampleMinimalView getCompEntity();
+
+}
@@ -0,0 +1,20 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.Computed;
+import com.haulmont.addons.cuba.entity.views.scan.EntityViewProjection;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+
+import java.util.UUID;
+
+@EntityViewProjection
+public interface SampleProjectionView extends BaseEntityView<SampleEntity, UUID> {
+
+    String getName();
+
+    SampleNameView getParent();
+
+    @Computed("size({E}.params)")
+    Integer getParamCount();
+
+}
@@ -0,0 +1,24 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.Computed;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+
+import java.util.UUID;
+
+public interface SampleWithComputedView extends BaseEntityView<SampleEntity, UUID> {
+
+    String getName();
+
+    @Computed("size({E}.params)")
+    Integer getParamCount();
+
+    @Computed(value = "sum(p.paramValue)", from = "{E}.params p")
+    Long getParamValueTotal();
+
+    @Computed("upper({E}.name)")
+    default String getUpperName() {
+        return getName().toUpperCase();
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.EntityViewFetchMode;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.cuba.core.global.FetchMode;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface SampleWithJoinedParameterGraph extends BaseEntityView<SampleEntity, UUID> {
+
+    String getName();
+
+    @EntityViewFetchMode(FetchMode.JOIN)
+    List<ParameterWithCompEntity> getParams();
+
+    @EntityViewFetchMode(FetchMode.JOIN)
+    List<ParameterWithCompEntity> getCompParams();
+
+}
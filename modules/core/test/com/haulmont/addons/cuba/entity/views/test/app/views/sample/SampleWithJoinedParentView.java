@@ -0,0 +1,17 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.EntityViewFetchMode;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.cuba.core.global.FetchMode;
+
+import java.util.UUID;
+
+public interface SampleWithJoinedParentView extends BaseEntityView<SampleEntity, UUID> {
+
+    String getName();
+
+    @EntityViewFetchMode(FetchMode.JOIN)
+    SampleMinimalView getParent();
+
+}
@@ -0,0 +1,16 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.LazyProperty;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+
+import java.util.UUID;
+
+public interface SampleWithLazyParentView extends BaseEntityView<SampleEntity, UUID> {
+
+    String getName();
+
+    @LazyProperty
+    SampleMinimalView getParent();
+
+}
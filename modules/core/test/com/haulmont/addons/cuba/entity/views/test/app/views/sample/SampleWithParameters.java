@@ -3,7 +3,12 @@ package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
 import com.haulmont.addons.cuba.entity.views.BaseEntityView;
 import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface SampleWithParameters extends BaseEntityView<SampleEntity, UUID> {
@@ -16,4 +21,21 @@ public interface SampleWithParameters extends BaseEntityView<SampleEntity, UUID>
 
     List<ParameterNameOnly> getCompParams();
 
+    @SuppressWarnings("unchecked")
+    default List<ParameterNameOnly> getAllParams() {
+        List params = new ArrayList<>(getOrigin().getParams());
+        params.addAll(getOrigin().getCompParams());
+        return params;
+    }
+
+    @SuppressWarnings("unchecked")
+    default Set<ParameterNameOnly> getParamSet() {
+        return new HashSet(getOrigin().getParams());
+    }
+
+    @SuppressWarnings("unchecked")
+    default Collection<ParameterNameOnly> getParamCollection() {
+        return new ArrayDeque(getOrigin().getParams());
+    }
+
 }
@@ -0,0 +1,19 @@
+package com.haulmont.addons.cuba.entity.views.test.app.views.sample;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.SplitQuery;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+
+import java.util.List;
+import java.util.UUID;
+
+@SplitQuery
+public interface SampleWithSplitParameterGraph extends BaseEntityView<SampleEntity, UUID> {
+
+    String getName();
+
+    List<ParameterWithCompEntity> getParams();
+
+    List<ParameterWithCompEntity> getCompParams();
+
+}
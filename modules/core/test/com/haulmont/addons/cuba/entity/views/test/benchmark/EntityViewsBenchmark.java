@@ -0,0 +1,342 @@
+package com.haulmont.addons.cuba.entity.views.test.benchmark;
+
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewEngine;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewWrapper;
+import com.haulmont.addons.cuba.entity.views.factory.LazyWrappingList;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.EntityParameter;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleMinimalView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleProjectionView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithJoinedParameterGraph;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithParentView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithSplitParameterGraph;
+import com.haulmont.addons.cuba.entity.views.test.wrapper.AppTestContainer;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rough throughput measurements for entity views internals. The benchmarks are too slow for a regular build
+ * and their results depend on hardware, so they are ignored by default and should be run manually.
+ */
+@Ignore
+public class EntityViewsBenchmark {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewsBenchmark.class);
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final int OPERATIONS = 1_000_000;
+
+    private Metadata metadata;
+
+    @Before
+    public void setUp() {
+        log.info("Java Version: {}", System.getProperty("java.version", "Cannot read Java version from system properties"));
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        metadata = cont.metadata();
+    }
+
+    @Test
+    public void benchmarkGetterEngines() {
+        SampleEntity entity = metadata.create(SampleEntity.class);
+        entity.setName("Benchmark");
+        for (EntityViewEngine engine : EntityViewEngine.values()) {
+            SampleMinimalView view = EntityViewWrapper.wrap(entity, SampleMinimalView.class, engine);
+            double nsPerOp = measure(() -> {
+                long length = 0;
+                for (int i = 0; i < OPERATIONS; i++) {
+                    length += view.getName().length();
+                }
+                return length;
+            });
+            log.info("Getter call, engine {}: {} ns/op", engine, String.format("%.2f", nsPerOp));
+        }
+    }
+
+    @Test
+    public void benchmarkWrapEngines() {
+        SampleEntity entity = metadata.create(SampleEntity.class);
+        entity.setName("Benchmark");
+        for (EntityViewEngine engine : EntityViewEngine.values()) {
+            double nsPerOp = measure(() -> {
+                long length = 0;
+                for (int i = 0; i < OPERATIONS; i++) {
+                    length += EntityViewWrapper.wrap(entity, SampleMinimalView.class, engine).getName().length();
+                }
+                return length;
+            });
+            log.info("Wrap and getter call, engine {}: {} ns/op", engine, String.format("%.2f", nsPerOp));
+        }
+    }
+
+    @Test
+    public void benchmarkDefaultMethod() throws Exception {
+        SampleEntity entity = metadata.create(SampleEntity.class);
+        entity.setName("Benchmark");
+        SampleMinimalView view = EntityViewWrapper.wrap(entity, SampleMinimalView.class, EntityViewEngine.PROXY);
+        Method method = SampleMinimalView.class.getMethod("getNameLowercase");
+
+        double uncachedNsPerOp = measure(OPERATIONS / 100, () -> {
+            long length = 0;
+            for (int i = 0; i < OPERATIONS / 100; i++) {
+                length += ((String) invokeDefaultMethodUncached(view, method)).length();
+            }
+            return length;
+        });
+        log.info("Default method call, handle resolved on every call: {} ns/op", String.format("%.2f", uncachedNsPerOp));
+
+        for (EntityViewEngine engine : EntityViewEngine.values()) {
+            SampleMinimalView engineView = EntityViewWrapper.wrap(entity, SampleMinimalView.class, engine);
+            double nsPerOp = measure(() -> {
+                long length = 0;
+                for (int i = 0; i < OPERATIONS; i++) {
+                    length += engineView.getNameLowercase().length();
+                }
+                return length;
+            });
+            log.info("Default method call, engine {}: {} ns/op", engine, String.format("%.2f", nsPerOp));
+        }
+    }
+
+    @Test
+    public void benchmarkWrapAll() {
+        EntityViewFactory factory = AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class);
+        for (int size : new int[]{10_000, 100_000, 1_000_000}) {
+            List<SampleEntity> entities = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                SampleEntity entity = metadata.create(SampleEntity.class);
+                entity.setName("Benchmark");
+                entities.add(entity);
+            }
+            double wrapNsPerOp = measure(size, () -> {
+                long length = 0;
+                for (SampleEntity entity : entities) {
+                    length += EntityViewWrapper.wrap(entity, SampleMinimalView.class).getName().length();
+                }
+                return length;
+            });
+            double wrapAllNsPerOp = measure(size, () -> {
+                long length = 0;
+                for (SampleMinimalView view : factory.wrapAll(entities, SampleMinimalView.class)) {
+                    length += view.getName().length();
+                }
+                return length;
+            });
+            log.info("{} entities, wrap one by one: {} ns/entity, wrapAll: {} ns/entity",
+                    size, String.format("%.2f", wrapNsPerOp), String.format("%.2f", wrapAllNsPerOp));
+        }
+    }
+
+    @Test
+    public void benchmarkLoadListMemory() {
+        EntityViewFactory factory = AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class);
+        int size = 100_000;
+        List<SampleEntity> entities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SampleEntity entity = metadata.create(SampleEntity.class);
+            entity.setName("Benchmark");
+            entities.add(entity);
+        }
+        long before = usedMemory();
+        List<SampleMinimalView> eager = factory.wrapAll(entities, SampleMinimalView.class);
+        long eagerBytes = usedMemory() - before;
+        assertTrue(eager.get(0).getName().length() > 0);
+        eager = null;
+
+        before = usedMemory();
+        List<SampleMinimalView> lazy = new LazyWrappingList<>(entities, SampleMinimalView.class, factory, null);
+        long length = 0;
+        for (SampleMinimalView view : lazy.subList(0, 20)) {
+            length += view.getName().length();
+        }
+        long lazyBytes = usedMemory() - before;
+        assertTrue(length > 0 && lazy.size() == size);
+        log.info("{} entities, eager wrapping: {} bytes/row, lazy wrapping of the first page: {} bytes/row",
+                size, String.format("%.2f", (double) eagerBytes / size), String.format("%.2f", (double) lazyBytes / size));
+    }
+
+    @Test
+    public void benchmarkSplitQuery() throws Exception {
+        Persistence persistence = cont.persistence();
+        DataManager dataManager = AppBeans.get(DataManager.class);
+        int roots = 100;
+        int childrenPerCollection = 10;
+        List<SampleEntity> samples = new ArrayList<>(roots);
+        List<EntityParameter> params = new ArrayList<>(roots * childrenPerCollection * 2);
+        for (int i = 0; i < roots; i++) {
+            SampleEntity sample = metadata.create(SampleEntity.class);
+            sample.setName("Benchmark" + i);
+            samples.add(sample);
+        }
+        for (SampleEntity sample : samples) {
+            for (int i = 0; i < childrenPerCollection; i++) {
+                EntityParameter param = metadata.create(EntityParameter.class);
+                param.setName("Param" + i);
+                param.setParamValue((long) i);
+                param.setSampleEntity(sample);
+                param.setCompEntity(samples.get(i));
+                params.add(param);
+
+                EntityParameter compParam = metadata.create(EntityParameter.class);
+                compParam.setName("CompParam" + i);
+                compParam.setCompEntity(sample);
+                params.add(compParam);
+            }
+        }
+        persistence.runInTransaction(em -> {
+            samples.forEach(em::persist);
+            params.forEach(em::persist);
+        });
+        try {
+            String query = "select e from playground$SampleEntity e where e.name like 'Benchmark%'";
+            double joinedNsPerRoot = measure(roots, () -> {
+                long count = 0;
+                for (SampleWithJoinedParameterGraph view : dataManager.load(SampleWithJoinedParameterGraph.class).query(query).list()) {
+                    count += view.getParams().size() + view.getCompParams().size();
+                }
+                return count;
+            });
+            double splitNsPerRoot = measure(roots, () -> {
+                long count = 0;
+                for (SampleWithSplitParameterGraph view : dataManager.load(SampleWithSplitParameterGraph.class).query(query).list()) {
+                    count += view.getParams().size() + view.getCompParams().size();
+                }
+                return count;
+            });
+            log.info("{} roots with 2 collections of {} children, joined collections: {} ns/root, split queries: {} ns/root",
+                    roots, childrenPerCollection, String.format("%.2f", joinedNsPerRoot), String.format("%.2f", splitNsPerRoot));
+        } finally {
+            QueryRunner runner = new QueryRunner(persistence.getDataSource());
+            runner.update("delete from PLAYGROUND_ENTITY_PARAMETER");
+            runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+        }
+    }
+
+    @Test
+    public void benchmarkProjection() throws Exception {
+        Persistence persistence = cont.persistence();
+        DataManager dataManager = AppBeans.get(DataManager.class);
+        int size = 1000;
+        SampleEntity parent = metadata.create(SampleEntity.class);
+        parent.setName("BenchmarkParent");
+        List<SampleEntity> samples = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SampleEntity sample = metadata.create(SampleEntity.class);
+            sample.setName("Benchmark" + i);
+            sample.setParent(parent);
+            samples.add(sample);
+        }
+        persistence.runInTransaction(em -> {
+            em.persist(parent);
+            samples.forEach(em::persist);
+        });
+        try {
+            String query = "select e from playground$SampleEntity e where e.parent is not null";
+            double entityNsPerRow = measure(size, () -> {
+                long length = 0;
+                for (SampleWithParentView view : dataManager.load(SampleWithParentView.class).query(query).list()) {
+                    length += view.getName().length() + view.getParent().getName().length();
+                }
+                return length;
+            });
+            double projectionNsPerRow = measure(size, () -> {
+                long length = 0;
+                for (SampleProjectionView view : dataManager.load(SampleProjectionView.class).query(query).list()) {
+                    length += view.getName().length() + view.getParent().getName().length();
+                }
+                return length;
+            });
+            log.info("{} rows, entities: {} ns/row, projection: {} ns/row",
+                    size, String.format("%.2f", entityNsPerRow), String.format("%.2f", projectionNsPerRow));
+        } finally {
+            QueryRunner runner = new QueryRunner(persistence.getDataSource());
+            runner.update("delete from PLAYGROUND_SAMPLE_ENTITY where PARENT_ID is not null");
+            runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+        }
+    }
+
+    /**
+     * @return Heap used after garbage collection, an approximation good enough to compare allocations
+     * of many objects.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Resolves default method handle the same way as it is done for the first call, but without caching.
+     */
+    private static Object invokeDefaultMethodUncached(Object proxy, Method method) {
+        try {
+            Class<?> declaringClass = method.getDeclaringClass();
+            MethodHandles.Lookup lookup;
+            try {
+                Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+                lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, declaringClass, MethodHandles.lookup());
+            } catch (NoSuchMethodException e) {
+                Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class);
+                constructor.setAccessible(true);
+                lookup = constructor.newInstance(declaringClass).in(declaringClass);
+            }
+            return lookup.unreflectSpecial(method, declaringClass)
+                    .bindTo(proxy)
+                    .invokeWithArguments();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double measure(LongSupplier body) {
+        return measure(OPERATIONS, body);
+    }
+
+    /**
+     * Runs the benchmark body several times and returns the best time.
+     *
+     * @param operations Number of operations performed by the body.
+     * @param body       Benchmark body that returns some value depending on the results to prevent
+     *                   dead code elimination.
+     * @return Nanoseconds per operation.
+     */
+    private double measure(int operations, LongSupplier body) {
+        long blackhole = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            blackhole += body.getAsLong();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            blackhole += body.getAsLong();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertTrue(blackhole > 0);
+        return (double) best / operations;
+    }
+}
@@ -30,6 +30,7 @@ import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -211,4 +212,19 @@ public class BaseEntityViewTest {
         assertEquals(user.getId(), sampleWithUser.getUser().getId());
         assertEquals(user.getName(), sampleWithUser.getUser().getName());
     }
+
+    @Test
+    public void testSetViewEntityInvalidatesWrappedReference() {
+        SampleMinimalWithUserView sampleWithUser = dataManager.create(SampleMinimalWithUserView.class);
+        SampleMinimalWithUserView.UserMinimalView userView = EntityViewWrapper.wrap(user, SampleMinimalWithUserView.UserMinimalView.class);
+        sampleWithUser.setUser(userView);
+        SampleMinimalWithUserView.UserMinimalView wrapped = sampleWithUser.getUser();
+        assertSame(wrapped, sampleWithUser.getUser());
+
+        sampleWithUser.setUser(null);
+        assertNull(sampleWithUser.getUser());
+        sampleWithUser.setUser(userView);
+        assertNotSame(wrapped, sampleWithUser.getUser());
+        assertEquals(user.getId(), sampleWithUser.getUser().getId());
+    }
 }
\ No newline at end of file
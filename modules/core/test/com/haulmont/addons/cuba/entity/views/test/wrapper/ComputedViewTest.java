@@ -0,0 +1,126 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.EntityParameter;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithComputedParentView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithComputedView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.EntityStates;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ComputedViewTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final String CHILDREN_QUERY = "select e from playground$SampleEntity e where e.parent is not null order by e.name";
+
+    private Persistence persistence;
+    private DataManager dataManager;
+    private ViewsConfiguration viewsConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        dataManager = AppBeans.get(DataManager.class);
+        viewsConfig = AppBeans.get(ViewsConfiguration.class);
+
+        SampleEntity parent1 = metadata.create(SampleEntity.class);
+        parent1.setName("Parent1");
+        SampleEntity parent2 = metadata.create(SampleEntity.class);
+        parent2.setName("Parent2");
+        SampleEntity child1 = metadata.create(SampleEntity.class);
+        child1.setName("Child1");
+        child1.setParent(parent1);
+        SampleEntity child2 = metadata.create(SampleEntity.class);
+        child2.setName("Child2");
+        child2.setParent(parent2);
+
+        persistence.runInTransaction(em -> {
+            em.persist(parent1);
+            em.persist(parent2);
+            em.persist(child1);
+            em.persist(child2);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_ENTITY_PARAMETER");
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testComputedValues() {
+        Metadata metadata = cont.metadata();
+        SampleEntity child1 = dataManager.load(SampleEntity.class).query(CHILDREN_QUERY).list().get(0);
+        persistence.runInTransaction(em -> {
+            for (long i = 1; i <= 3; i++) {
+                EntityParameter param = metadata.create(EntityParameter.class);
+                param.setName("Param" + i);
+                param.setParamValue(i);
+                param.setSampleEntity(child1);
+                em.persist(param);
+            }
+        });
+
+        ViewsConfigurationBean.ViewInterfaceInfo info = viewsConfig.getViewInterfaceDefinition(SampleWithComputedView.class);
+        assertFalse(info.getView().containsProperty("paramCount"));
+        assertEquals("(select sum(p.paramValue) from {E}.params p)", info.getComputedExpressions().get("paramValueTotal"));
+
+        List<SampleWithComputedView> views = dataManager.load(SampleWithComputedView.class).query(CHILDREN_QUERY).list();
+        assertEquals(Integer.valueOf(3), views.get(0).getParamCount());
+        assertEquals(Long.valueOf(6), views.get(0).getParamValueTotal());
+        assertEquals("CHILD1", views.get(0).getUpperName());
+        assertEquals(Integer.valueOf(0), views.get(1).getParamCount());
+        assertNull(views.get(1).getParamValueTotal());
+        //Collections used by expressions are not loaded
+        assertFalse(AppBeans.get(EntityStates.class).isLoaded(views.get(0).getOrigin(), "params"));
+
+        //Values of new entities are not computed, default methods are invoked instead
+        SampleWithComputedView created = dataManager.create(SampleWithComputedView.class);
+        created.getOrigin().setName("New");
+        assertNull(created.getParamCount());
+        assertEquals("NEW", created.getUpperName());
+    }
+
+    @Test
+    public void testComputedValuesOfNestedViews() {
+        List<SampleWithComputedParentView> children = dataManager.load(SampleWithComputedParentView.class).query(CHILDREN_QUERY).list();
+        //Values of nested entity views are loaded with the root ones
+        SampleWithComputedView parent = children.get(0).getParent();
+        assertEquals("PARENT1", parent.getUpperName());
+        assertEquals(Integer.valueOf(0), parent.getParamCount());
+    }
+
+    @Test
+    public void testComputedValuesSerialization() {
+        SampleWithComputedView view = dataManager.load(SampleWithComputedView.class).query(CHILDREN_QUERY).list().get(0);
+        assertEquals(Integer.valueOf(0), view.getParamCount());
+
+        SampleWithComputedView deserialized = SerializationUtils.roundtrip(view);
+        //The abstract getter would return null if the value was lost
+        assertEquals(Integer.valueOf(0), deserialized.getParamCount());
+        assertEquals("CHILD1", deserialized.getUpperName());
+    }
+}
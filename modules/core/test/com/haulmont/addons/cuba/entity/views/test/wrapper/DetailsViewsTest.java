@@ -1,6 +1,10 @@
 package com.haulmont.addons.cuba.entity.views.test.wrapper;
 
+import com.google.common.collect.Sets;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewEngine;
 import com.haulmont.addons.cuba.entity.views.factory.EntityViewWrapper;
+import com.haulmont.addons.cuba.entity.views.factory.WrappingCollection;
+import com.haulmont.addons.cuba.entity.views.factory.WrappingSet;
 import com.haulmont.addons.cuba.entity.views.test.app.entity.EntityParameter;
 import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
 import com.haulmont.addons.cuba.entity.views.test.app.views.sample.ParameterNameOnly;
@@ -18,10 +22,16 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class DetailsViewsTest {
@@ -103,6 +113,51 @@ public class DetailsViewsTest {
         assertTrue(params.get(0).getName().equals("Param1") && params.get(1).getName().equals("Param2"));
     }
 
+    @Test
+    public void testDefaultMethodResultIsWrapped() {
+        SampleEntity entity = dataManager.load(SampleWithParameters.class)
+                .query("select e from playground$SampleEntity e where e.name = :name")
+                .parameter("name", "Data1")
+                .list().get(0).getOrigin();
+        for (EntityViewEngine engine : EntityViewEngine.values()) {
+            SampleWithParameters view = EntityViewWrapper.wrap(entity, SampleWithParameters.class, engine);
+            List<ParameterNameOnly> params = new ArrayList<>(view.getAllParams());
+            params.sort(Comparator.comparing(ParameterNameOnly::getName));
+            assertEquals(engine.name(), 2, params.size());
+            assertEquals(engine.name(), "Param1", params.get(0).getName());
+            assertEquals(engine.name(), param2.getId(), params.get(1).getOrigin().getId());
+        }
+    }
+
+    @Test
+    public void testSetAndCollectionResultsAreWrapped() {
+        SampleEntity entity = dataManager.load(SampleWithParameters.class)
+                .query("select e from playground$SampleEntity e where e.name = :name")
+                .parameter("name", "Data1")
+                .list().get(0).getOrigin();
+        for (EntityViewEngine engine : EntityViewEngine.values()) {
+            SampleWithParameters view = EntityViewWrapper.wrap(entity, SampleWithParameters.class, engine);
+
+            Set<ParameterNameOnly> set = view.getParamSet();
+            assertTrue(engine.name(), set instanceof WrappingSet);
+            assertEquals(engine.name(), Sets.newHashSet("Param1", "Param2"),
+                    set.stream().map(ParameterNameOnly::getName).collect(Collectors.toSet()));
+            ParameterNameOnly first = set.iterator().next();
+            assertTrue(engine.name(), set.contains(first));
+            assertTrue(engine.name(), set.remove(first));
+            assertEquals(engine.name(), 1, set.size());
+            assertTrue(engine.name(), set.add(first));
+            assertEquals(engine.name(), 2, set.size());
+
+            Collection<ParameterNameOnly> collection = view.getParamCollection();
+            assertTrue(engine.name(), collection instanceof WrappingCollection);
+            assertEquals(engine.name(), 2, collection.size());
+            for (ParameterNameOnly param : collection) {
+                assertTrue(engine.name(), param.getName().startsWith("Param"));
+            }
+        }
+    }
+
     @Test
     public void testEmptyDetails(){
         SampleWithParameters sampleWithParameters = dataManager.load(SampleWithParameters.class)
@@ -141,6 +196,23 @@ public class DetailsViewsTest {
         assertEquals("Param3", children.get(2).getName());
     }
 
+    @Test
+    public void testRepeatedReadsReturnSameWrappers() {
+        SampleWithParameters sampleWithParameters = dataManager.load(SampleWithParameters.class)
+                .query("select e from playground$SampleEntity e where e.name = :name")
+                .parameter("name", "Data1")
+                .list().get(0);
+        List<ParameterNameOnly> params = sampleWithParameters.getParams();
+        assertSame(params, sampleWithParameters.getParams());
+        for (int i = 0; i < params.size(); i++) {
+            assertSame(params.get(i), sampleWithParameters.getParams().get(i));
+        }
+
+        sampleWithParameters.getOrigin().setParams(new ArrayList<>(sampleWithParameters.getOrigin().getParams()));
+        assertNotSame(params, sampleWithParameters.getParams());
+        assertEquals(2, sampleWithParameters.getParams().size());
+    }
+
     @Test
     public void testComposition(){
         SampleWithParameters sampleWithParameters = dataManager.load(SampleWithParameters.class)
@@ -0,0 +1,94 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.EntityViewAsyncLoader;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleMinimalView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithParentView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.entity.contracts.Id;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EntityViewAsyncLoaderTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private Persistence persistence;
+    private EntityViewAsyncLoader asyncLoader;
+    private SampleEntity data1, data2;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        asyncLoader = AppBeans.get(EntityViewAsyncLoader.NAME);
+
+        data1 = metadata.create(SampleEntity.class);
+        data1.setName("Data1");
+
+        data2 = metadata.create(SampleEntity.class);
+        data2.setName("Data2");
+        data2.setParent(data1);
+
+        persistence.runInTransaction(em -> {
+            em.persist(data1);
+            em.persist(data2);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testFanOut() {
+        CompletableFuture<SampleWithParentView> child = asyncLoader.load(Id.of(data2.getId(), SampleWithParentView.class));
+        CompletableFuture<List<SampleMinimalView>> all = asyncLoader.loadList(SampleMinimalView.class,
+                "select e from playground$SampleEntity e order by e.name", Collections.emptyMap());
+        CompletableFuture.allOf(child, all).join();
+
+        assertEquals(data1.getName(), child.join().getParent().getName());
+        assertEquals(2, all.join().size());
+        assertEquals(data2.getName(), all.join().get(1).getName());
+    }
+
+    @Test
+    public void testContextPropagation() {
+        Thread caller = Thread.currentThread();
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        CompletableFuture<Thread> thread = asyncLoader.submit(() -> {
+            assertSame(securityContext, AppContext.getSecurityContext());
+            return Thread.currentThread();
+        });
+        assertNotSame(caller, thread.join());
+
+        try (Transaction tx = persistence.createTransaction()) {
+            CompletableFuture<Thread> inTransaction = asyncLoader.submit(Thread::currentThread);
+            assertTrue(inTransaction.isDone());
+            assertSame(caller, inTransaction.join());
+            tx.commit();
+        }
+    }
+}
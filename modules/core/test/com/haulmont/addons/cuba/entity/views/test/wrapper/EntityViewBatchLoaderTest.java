@@ -0,0 +1,147 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory;
+import com.haulmont.addons.cuba.entity.views.global.EntityViewBatchLoader;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleMinimalView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.user.SampleMinimalWithUserView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.entity.contracts.Id;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EntityViewBatchLoaderTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final int ENTITIES = 25;
+    private static final int BATCH_SIZE = 10;
+
+    private Persistence persistence;
+    private List<SampleEntity> entities;
+    private AtomicInteger queries;
+    private DataManager countingDataManager;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+
+        entities = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            SampleEntity entity = metadata.create(SampleEntity.class);
+            entity.setName("Data" + i);
+            entities.add(entity);
+        }
+        persistence.runInTransaction(em -> entities.forEach(em::persist));
+
+        DataManager dataManager = AppBeans.get(DataManager.class);
+        queries = new AtomicInteger();
+        countingDataManager = (DataManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataManager.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("load")) {
+                        queries.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(dataManager, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testLoadByIdOneByOne() {
+        for (SampleEntity entity : entities) {
+            SampleMinimalView view = countingDataManager.load(Id.of(entity.getId(), SampleMinimalView.class)).one();
+            assertEquals(entity.getName(), view.getName());
+        }
+        assertEquals(ENTITIES, queries.get());
+    }
+
+    @Test
+    public void testLoadByIdInBatches() {
+        List<CompletableFuture<SampleMinimalView>> futures = new ArrayList<>();
+        try (EntityViewBatchLoader loader = createLoader()) {
+            for (SampleEntity entity : entities) {
+                futures.add(loader.load(Id.of(entity.getId(), SampleMinimalView.class)));
+            }
+            for (int i = 0; i < ENTITIES; i++) {
+                SampleMinimalView view = futures.get(i).join();
+                assertEquals(SampleMinimalWithUserView.class, view.getInterfaceClass());
+                assertEquals(entities.get(i).getName(), view.getName());
+            }
+        }
+        assertEquals((ENTITIES + BATCH_SIZE - 1) / BATCH_SIZE, queries.get());
+    }
+
+    @Test
+    public void testLoadMissingAndDuplicateIds() {
+        try (EntityViewBatchLoader loader = createLoader()) {
+            CompletableFuture<SampleMinimalView> first = loader.load(Id.of(entities.get(0).getId(), SampleMinimalView.class));
+            CompletableFuture<SampleMinimalView> duplicate = loader.load(Id.of(entities.get(0).getId(), SampleMinimalView.class));
+            CompletableFuture<SampleMinimalView> missing = loader.load(Id.of(UUID.randomUUID(), SampleMinimalView.class));
+            loader.dispatch();
+
+            assertSame(first, duplicate);
+            assertEquals(entities.get(0).getName(), first.join().getName());
+            assertNull(missing.join());
+        }
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void testLoadAfterClose() {
+        CompletableFuture<SampleMinimalView> view;
+        EntityViewBatchLoader loader = EntityViewBatchLoader.open(BATCH_SIZE);
+        try {
+            view = loader.load(Id.of(entities.get(0).getId(), SampleMinimalView.class));
+        } finally {
+            loader.close();
+        }
+        //Queued loads are dispatched on close
+        assertTrue(view.isDone());
+        assertEquals(entities.get(0).getName(), view.join().getName());
+        try {
+            loader.load(Id.of(entities.get(1).getId(), SampleMinimalView.class));
+            fail("Closed loader must not accept loads");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    private EntityViewBatchLoader createLoader() {
+        return new EntityViewBatchLoader(countingDataManager, AppBeans.get(ViewsConfiguration.class),
+                AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class), BATCH_SIZE);
+    }
+}
@@ -0,0 +1,145 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithAutoParentView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithBatchedParentView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithJoinedParentView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithParentView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithUndefinedParentView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.FetchMode;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntityViewFetchModeTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final String TABLE = "PLAYGROUND_SAMPLE_ENTITY";
+
+    private static final String CHILDREN_QUERY = "select e from playground$SampleEntity e where e.parent is not null order by e.name";
+
+    private Persistence persistence;
+    private DataManager dataManager;
+    private ViewsConfiguration viewsConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        dataManager = AppBeans.get(DataManager.class);
+        viewsConfig = AppBeans.get(ViewsConfiguration.class);
+
+        SampleEntity parent1 = metadata.create(SampleEntity.class);
+        parent1.setName("Parent1");
+        SampleEntity parent2 = metadata.create(SampleEntity.class);
+        parent2.setName("Parent2");
+        SampleEntity child1 = metadata.create(SampleEntity.class);
+        child1.setName("Child1");
+        child1.setParent(parent1);
+        SampleEntity child2 = metadata.create(SampleEntity.class);
+        child2.setName("Child2");
+        child2.setParent(parent2);
+
+        persistence.runInTransaction(em -> {
+            em.persist(parent1);
+            em.persist(parent2);
+            em.persist(child1);
+            em.persist(child2);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testComposedViewFetchMode() {
+        assertEquals(FetchMode.AUTO, viewsConfig.getViewByInterface(SampleWithParentView.class).getProperty("parent").getFetchMode());
+        assertEquals(FetchMode.JOIN, viewsConfig.getViewByInterface(SampleWithJoinedParentView.class).getProperty("parent").getFetchMode());
+        assertEquals(FetchMode.BATCH, viewsConfig.getViewByInterface(SampleWithBatchedParentView.class).getProperty("parent").getFetchMode());
+        assertEquals(FetchMode.AUTO, viewsConfig.getViewByInterface(SampleWithAutoParentView.class).getProperty("parent").getFetchMode());
+        assertEquals(FetchMode.UNDEFINED, viewsConfig.getViewByInterface(SampleWithUndefinedParentView.class).getProperty("parent").getFetchMode());
+    }
+
+    @Test
+    public void testJoinFetchSql() {
+        SqlCapture<List<SampleWithJoinedParentView>> load =
+                SqlCapture.capture(() -> dataManager.load(SampleWithJoinedParentView.class).query(CHILDREN_QUERY).list());
+        assertEquals(2, load.getResult().size());
+        List<String> sql = load.getSelects();
+        assertFalse(sql.isEmpty());
+        //Parents are joined to the main query
+        assertTrue(sql.get(0), StringUtils.countMatches(sql.get(0), TABLE) >= 2);
+        assertTrue(sql.get(0), sql.get(0).contains("JOIN"));
+        assertTrue(sql.toString(), sql.stream().skip(1).noneMatch(s -> s.contains(TABLE)));
+    }
+
+    @Test
+    public void testBatchFetchSql() {
+        SqlCapture<List<SampleWithBatchedParentView>> load =
+                SqlCapture.capture(() -> dataManager.load(SampleWithBatchedParentView.class).query(CHILDREN_QUERY).list());
+        assertEquals(2, load.getResult().size());
+        List<String> sql = load.getSelects();
+        assertFalse(sql.isEmpty());
+        //Parents are loaded by one additional query for all children
+        assertEquals(sql.get(0), 1, StringUtils.countMatches(sql.get(0), TABLE));
+        List<String> parentQueries = sql.stream().skip(1).filter(s -> s.contains(TABLE)).collect(Collectors.toList());
+        assertEquals(sql.toString(), 1, parentQueries.size());
+        assertTrue(parentQueries.get(0), parentQueries.get(0).contains(" IN "));
+    }
+
+    @Test
+    public void testAutoFetchSql() {
+        SqlCapture<List<SampleWithAutoParentView>> load =
+                SqlCapture.capture(() -> dataManager.load(SampleWithAutoParentView.class).query(CHILDREN_QUERY).list());
+        List<SampleWithAutoParentView> children = load.getResult();
+        assertEquals(2, children.size());
+        List<String> sql = load.getSelects();
+        assertFalse(sql.isEmpty());
+        //The platform either joins parents or loads them by one additional query, never one query per child
+        boolean joined = sql.get(0).contains("JOIN") && StringUtils.countMatches(sql.get(0), TABLE) >= 2;
+        List<String> parentQueries = sql.stream().skip(1).filter(s -> s.contains(TABLE)).collect(Collectors.toList());
+        assertTrue(sql.toString(), joined ? parentQueries.isEmpty() : parentQueries.size() == 1);
+
+        SqlCapture<String> read = SqlCapture.capture(() -> children.get(0).getParent().getName() + children.get(1).getParent().getName());
+        assertEquals("Parent1Parent2", read.getResult());
+        assertTrue(read.getSelects().toString(), read.getSelects().isEmpty());
+    }
+
+    @Test
+    public void testUndefinedFetchSql() {
+        SqlCapture<List<SampleWithUndefinedParentView>> load =
+                SqlCapture.capture(() -> dataManager.load(SampleWithUndefinedParentView.class).query(CHILDREN_QUERY).list());
+        List<SampleWithUndefinedParentView> children = load.getResult();
+        assertEquals(2, children.size());
+        List<String> sql = load.getSelects();
+        assertFalse(sql.isEmpty());
+        //Parents are neither joined nor batched, the ORM loads every parent by its own query
+        assertEquals(sql.get(0), 1, StringUtils.countMatches(sql.get(0), TABLE));
+        List<String> parentQueries = sql.stream().skip(1).filter(s -> s.contains(TABLE)).collect(Collectors.toList());
+        assertEquals(sql.toString(), 2, parentQueries.size());
+        assertTrue(sql.toString(), parentQueries.stream().noneMatch(s -> s.contains(" IN ")));
+        assertEquals("Parent1", children.get(0).getParent().getName());
+    }
+}
@@ -0,0 +1,118 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleProjectionView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EntityViewProjectionTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final String CHILDREN_QUERY = "select e from playground$SampleEntity e where e.parent is not null order by e.name";
+
+    private Persistence persistence;
+    private DataManager dataManager;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        dataManager = AppBeans.get(DataManager.class);
+
+        SampleEntity parent1 = metadata.create(SampleEntity.class);
+        parent1.setName("Parent1");
+        SampleEntity parent2 = metadata.create(SampleEntity.class);
+        parent2.setName("Parent2");
+        SampleEntity child1 = metadata.create(SampleEntity.class);
+        child1.setName("Child1");
+        child1.setParent(parent1);
+        SampleEntity child2 = metadata.create(SampleEntity.class);
+        child2.setName("Child2");
+        child2.setParent(parent2);
+
+        persistence.runInTransaction(em -> {
+            em.persist(parent1);
+            em.persist(parent2);
+            em.persist(child1);
+            em.persist(child2);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testProjection() {
+        SqlCapture<List<SampleProjectionView>> load = SqlCapture.capture(() -> {
+            List<SampleProjectionView> loaded = dataManager.load(SampleProjectionView.class).query(CHILDREN_QUERY).list();
+            assertEquals(2, loaded.size());
+            assertEquals("Child1", loaded.get(0).getName());
+            assertEquals("Parent1", loaded.get(0).getParent().getName());
+            assertEquals("Parent2", loaded.get(1).getParent().getName());
+            assertEquals(Integer.valueOf(0), loaded.get(0).getParamCount());
+            return loaded;
+        });
+        List<SampleProjectionView> views = load.getResult();
+        List<String> sql = load.getSelects();
+        //Names of children and parents are selected by one query without loading entities
+        assertEquals(sql.toString(), 1, sql.size());
+        assertTrue(sql.get(0), sql.get(0).contains("LEFT OUTER JOIN"));
+
+        SampleEntity origin = views.get(0).getOrigin();
+        assertEquals("Child1", origin.getName());
+        assertEquals(origin.getId(), views.get(0).getId());
+    }
+
+    @Test
+    public void testProjectionSerialization() {
+        ArrayList<SampleProjectionView> views = new ArrayList<>(dataManager.load(SampleProjectionView.class).query(CHILDREN_QUERY).list());
+        List<SampleProjectionView> deserialized = SerializationUtils.roundtrip(views);
+
+        assertEquals(2, deserialized.size());
+        assertEquals("Child1", deserialized.get(0).getName());
+        assertEquals("Parent1", deserialized.get(0).getParent().getName());
+        assertEquals(Integer.valueOf(0), deserialized.get(0).getParamCount());
+        assertEquals(views.get(0), deserialized.get(0));
+        //Origins are loaded after deserialization as well
+        assertEquals("Child2", deserialized.get(1).getOrigin().getName());
+    }
+
+    @Test
+    public void testProjectionLeftJoinAndFallback() {
+        List<SampleProjectionView> all = dataManager.load(SampleProjectionView.class)
+                .query("select e from playground$SampleEntity e order by e.name")
+                .list();
+        assertEquals(4, all.size());
+        assertEquals("Child1", all.get(0).getName());
+        assertNull(all.get(2).getParent());
+
+        //Distinct queries are not rewritten, entity views are loaded from entities
+        List<SampleProjectionView> distinct = dataManager.load(SampleProjectionView.class)
+                .query("select distinct e from playground$SampleEntity e where e.parent is not null")
+                .list();
+        assertEquals(2, distinct.size());
+        assertTrue(distinct.stream().allMatch(view -> view.getParent() != null));
+    }
+}
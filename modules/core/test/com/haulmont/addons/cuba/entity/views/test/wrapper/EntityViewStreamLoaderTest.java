@@ -0,0 +1,168 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.EntityViewStreamLoader;
+import com.haulmont.addons.cuba.entity.views.ViewsSupportDataManagerBean;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleMinimalView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EntityViewStreamLoaderTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final int ENTITIES = 250;
+    private static final int CHUNK_SIZE = 20;
+
+    private Persistence persistence;
+    private ViewsSupportDataManagerBean dataManager;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        dataManager = (ViewsSupportDataManagerBean) AppBeans.get(DataManager.class);
+
+        List<SampleEntity> entities = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            SampleEntity entity = metadata.create(SampleEntity.class);
+            entity.setName(String.format("Data%03d", i));
+            entities.add(entity);
+        }
+        persistence.runInTransaction(em -> entities.forEach(em::persist));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testStreamAllWithKeysetPaging() {
+        Set<UUID> ids;
+        try (Stream<SampleMinimalView> views = dataManager.loadStream(SampleMinimalView.class).chunkSize(CHUNK_SIZE).stream()) {
+            ids = views.map(SampleMinimalView::getId).collect(Collectors.toSet());
+        }
+        assertEquals(ENTITIES, ids.size());
+    }
+
+    @Test
+    public void testStreamQuery() {
+        List<String> names;
+        try (Stream<SampleMinimalView> views = dataManager.loadStream(SampleMinimalView.class)
+                .query("select e from playground$SampleEntity e where e.name like :name order by e.name")
+                .parameter("name", "Data1%")
+                .chunkSize(CHUNK_SIZE)
+                .stream()) {
+            names = views.map(SampleMinimalView::getName).collect(Collectors.toList());
+        }
+        assertEquals(100, names.size());
+        assertEquals("Data100", names.get(0));
+        assertEquals("Data199", names.get(99));
+    }
+
+    @Test
+    public void testReadRowsAreCollected() {
+        EntityViewStreamLoader<SampleEntity, SampleMinimalView, UUID>.Cursor cursor =
+                dataManager.<SampleEntity, SampleMinimalView, UUID>loadStream(SampleMinimalView.class).chunkSize(CHUNK_SIZE).cursor();
+        try {
+            WeakReference<SampleEntity> first = new WeakReference<>(cursor.next().getOrigin());
+            for (int i = 1; i < CHUNK_SIZE * 3; i++) {
+                cursor.next();
+            }
+            for (int i = 0; i < 10 && first.get() != null; i++) {
+                System.gc();
+            }
+            assertNull(first.get());
+        } finally {
+            cursor.close();
+        }
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testCancel() {
+        EntityViewStreamLoader<SampleEntity, SampleMinimalView, UUID>.Cursor cursor =
+                dataManager.<SampleEntity, SampleMinimalView, UUID>loadStream(SampleMinimalView.class).chunkSize(CHUNK_SIZE).cursor();
+        Set<UUID> ids = new HashSet<>();
+        while (cursor.hasNext()) {
+            ids.add(cursor.next().getId());
+            if (ids.size() == CHUNK_SIZE + 5) {
+                cursor.cancel();
+            }
+        }
+        assertEquals(CHUNK_SIZE + 5, ids.size());
+        cursor.close();
+    }
+
+    @Test
+    public void testPublisherBackpressure() {
+        List<SampleMinimalView> received = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        Publisher<SampleMinimalView> publisher = dataManager.<SampleEntity, SampleMinimalView, UUID>loadStream(SampleMinimalView.class)
+                .chunkSize(CHUNK_SIZE)
+                .publisher();
+        publisher.subscribe(new Subscriber<SampleMinimalView>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(SampleMinimalView view) {
+                received.add(view);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+        assertTrue(received.isEmpty());
+
+        subscription.get().request(CHUNK_SIZE + 5);
+        assertEquals(CHUNK_SIZE + 5, received.size());
+        assertFalse(completed.get());
+
+        subscription.get().request(Long.MAX_VALUE);
+        assertEquals(ENTITIES, received.size());
+        assertTrue(completed.get());
+        assertEquals(ENTITIES, received.stream().map(SampleMinimalView::getId).distinct().count());
+    }
+}
@@ -1,18 +1,33 @@
 package com.haulmont.addons.cuba.entity.views.test.wrapper;
 
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewEngine;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory;
 import com.haulmont.addons.cuba.entity.views.factory.EntityViewWrapper;
+import com.haulmont.addons.cuba.entity.views.factory.GeneratedEntityView;
+import com.haulmont.addons.cuba.entity.views.factory.LazyWrappingList;
+import com.haulmont.addons.cuba.entity.views.factory.WrappingList;
+import com.haulmont.addons.cuba.entity.views.global.ViewsSupportEntityStates;
 import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
 import com.haulmont.addons.cuba.entity.views.test.app.entity.ExtendedUser;
 import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
 import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleMinimalView;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithParentView;
 import com.haulmont.addons.cuba.entity.views.test.app.views.user.SampleMinimalWithUserView;
 import com.haulmont.addons.cuba.entity.views.test.app.views.user.SampleWithUserView;
 import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.EntityStates;
 import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.security.entity.Group;
 import com.haulmont.cuba.security.entity.User;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
@@ -20,8 +35,21 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class EntityWrapperTest {
 
@@ -103,5 +131,266 @@ public class EntityWrapperTest {
         assertEquals(view.getName(), substitute.getName());
     }
 
+    @Test
+    public void testViewCovered() {
+        View withUser = viewsConfig.getViewByInterface(SampleWithUserView.class);
+        View minimalWithUser = viewsConfig.getViewByInterface(SampleMinimalWithUserView.class);
+        assertTrue(viewsConfig.isViewCovered(withUser, withUser));
+        assertTrue(viewsConfig.isViewCovered(withUser, minimalWithUser));
+        assertFalse(viewsConfig.isViewCovered(minimalWithUser, withUser));
+    }
+
+    @Test
+    public void testCoveredViewReloadIssuesNoQuery() {
+        List<SampleWithUserView> views = dataManager.load(SampleWithUserView.class)
+                .query("select e from playground$SampleEntity e order by e.name")
+                .list();
+        assertEquals(2, views.size());
+        //SampleWithUserView is not related to SampleMinimalWithUserView, but its CUBA view covers the target one
+        SqlCapture<List<SampleMinimalWithUserView>> reload = SqlCapture.capture(() -> {
+            List<SampleMinimalWithUserView> reloaded = new ArrayList<>();
+            for (SampleWithUserView view : views) {
+                SampleMinimalWithUserView minimal = view.reload(SampleMinimalWithUserView.class);
+                assertSame(view.getOrigin(), minimal.getOrigin());
+                reloaded.add(minimal);
+            }
+            return reloaded;
+        });
+        assertTrue(reload.getSelects().toString(), reload.getSelects().isEmpty());
+        assertEquals(2, reload.getResult().size());
+        assertEquals("Data1", reload.getResult().get(0).getName());
+        assertEquals("Data2", reload.getResult().get(1).getName());
+    }
+
+    @Test
+    public void testLoadedViewMarker() {
+        ViewsSupportEntityStates entityStates = AppBeans.get(ViewsSupportEntityStates.class);
+        View withUser = viewsConfig.getViewByInterface(SampleWithUserView.class);
+        SampleWithUserView view = dataManager.load(SampleWithUserView.class).id(data1.getId()).one();
+        assertNotNull(entityStates.getLoadedView(view));
+        assertTrue(viewsConfig.isViewCovered(entityStates.getLoadedView(view), withUser));
+        assertTrue(entityStates.isLoadedWithView(view.getOrigin(), viewsConfig.getViewByInterface(SampleMinimalWithUserView.class)));
+
+        SampleEntity minimal = dataManager.load(SampleEntity.class).id(data1.getId()).view(View.MINIMAL).one();
+        assertFalse(entityStates.isLoadedWithView(minimal, withUser));
+    }
+
+    @Test
+    public void testLoadedViewMarkerDoesNotCoverReplacedReferences() {
+        ViewsSupportEntityStates entityStates = AppBeans.get(ViewsSupportEntityStates.class);
+        View withUser = viewsConfig.getViewByInterface(SampleWithUserView.class);
+        SampleWithUserView view = dataManager.load(SampleWithUserView.class).id(data1.getId()).one();
+        assertTrue(entityStates.isLoadedWithView(view.getOrigin(), withUser));
+
+        //The user misses the login attribute
+        View emailOnly = new View(User.class).addProperty("email");
+        User partialUser = dataManager.load(User.class).id(user.getId()).view(emailOnly).one();
+        view.getOrigin().setUser(partialUser);
+        assertFalse(entityStates.isLoadedWithView(view.getOrigin(), withUser));
+        SampleWithUserView rewrapped = EntityViewWrapper.wrap(view.getOrigin(), SampleWithUserView.class);
+        assertEquals(user.getLogin(), rewrapped.getUser().getLogin());
+
+        //A reference set through the view is checked on the next access as well
+        SampleMinimalWithUserView minimalView = dataManager.load(SampleMinimalWithUserView.class).id(data2.getId()).one();
+        assertEquals(data2.getName(), minimalView.getName());
+        User otherPartialUser = dataManager.load(User.class).id(user.getId()).view(emailOnly).one();
+        minimalView.setUser(EntityViewWrapper.wrap(otherPartialUser, SampleMinimalWithUserView.UserMinimalView.class));
+        assertEquals(user.getLogin(), minimalView.getUser().getLogin());
+    }
+
+    @Test
+    public void testReferenceReplacedThroughViewIsLoaded() throws Exception {
+        User other = dataManager.create(User.class);
+        other.setLogin("entityViewsOther");
+        other.setName("Other");
+        other.setGroup(dataManager.load(Group.class).list().get(0));
+        persistence.runInTransaction(em -> em.persist(other));
+        try {
+            SampleMinimalWithUserView minimalView = dataManager.load(SampleMinimalWithUserView.class).id(data2.getId()).one();
+            assertEquals(user.getLogin(), minimalView.getUser().getLogin());
+
+            //A different user that misses the login attribute, the database still references the old one
+            View emailOnly = new View(User.class).addProperty("email");
+            User partialOther = dataManager.load(User.class).id(other.getId()).view(emailOnly).one();
+            minimalView.setUser(EntityViewWrapper.wrap(partialOther, SampleMinimalWithUserView.UserMinimalView.class));
+            assertEquals(other.getId(), minimalView.getUser().getId());
+            assertEquals(other.getLogin(), minimalView.getUser().getLogin());
+            assertEquals(other.getName(), minimalView.getUser().getName());
+        } finally {
+            new QueryRunner(persistence.getDataSource()).update("delete from SEC_USER where ID = ?", other.getId().toString());
+        }
+    }
+
+    @Test
+    public void testGeneratedEngine() {
+        SampleEntity sampleEntity = dataManager.load(SampleEntity.class).query("select e from playground$SampleEntity e where e.name = :name")
+                .parameter("name", "Data2").view("sampleEntity-browse-view").one();
+        SampleWithParentView view = EntityViewWrapper.wrap(sampleEntity, SampleWithParentView.class, EntityViewEngine.GENERATED);
+        assertTrue(view instanceof GeneratedEntityView);
+        assertEquals(SampleWithParentView.class, view.getInterfaceClass());
+        assertSame(sampleEntity, view.getOrigin());
+        assertEquals(sampleEntity.getName(), view.getName());
+        assertEquals(sampleEntity.getId(), view.getId());
+        assertEquals(data1.getName(), view.getParent().getName());
+        assertEquals(data1.getName().toLowerCase(), view.getParent().getNameLowercase());
+
+        view.setName("Data2 generated");
+        assertEquals("Data2 generated", sampleEntity.getName());
+    }
+
+    @Test
+    public void testLoadStateIsCheckedOnFirstPropertyAccess() {
+        int[] checks = {0};
+        new MockUp<ViewsSupportEntityStates>() {
+            @Mock
+            boolean isLoadedWithView(Invocation invocation, Entity entity, View view) {
+                checks[0]++;
+                return invocation.proceed();
+            }
+        };
+        SampleEntity sampleEntity = dataManager.load(SampleEntity.class).id(data2.getId()).view(View.MINIMAL).one();
+        SampleWithParentView view = EntityViewWrapper.wrap(sampleEntity, SampleWithParentView.class);
+        assertSame(sampleEntity, view.getOrigin());
+        assertEquals(sampleEntity.getId(), view.getId());
+        assertEquals(0, checks[0]);
+
+        assertEquals(data1.getName(), view.getParent().getName());
+        assertTrue(checks[0] > 0);
+
+        //Entities loaded with the view of the entity view are not checked at all
+        checks[0] = 0;
+        EntityViewFactory factory = AppBeans.get(EntityViewFactory.NAME);
+        SampleEntity loaded = dataManager.load(SampleEntity.class).id(data2.getId()).view("sampleEntity-browse-view").one();
+        SampleWithParentView loadedView = factory.wrapLoaded(loaded, SampleWithParentView.class,
+                viewsConfig.getViewByInterface(SampleWithParentView.class));
+        assertEquals(loaded.getName(), loadedView.getName());
+        assertEquals(0, checks[0]);
+        assertNull(factory.wrapLoaded(null, SampleWithParentView.class, null));
+    }
+
+    @Test
+    public void testProxyEngine() {
+        SampleEntity sampleEntity = dataManager.load(SampleEntity.class).list().get(0);
+        SampleMinimalView view = EntityViewWrapper.wrap(sampleEntity, SampleMinimalView.class, EntityViewEngine.PROXY);
+        assertTrue(Proxy.isProxyClass(view.getClass()));
+        assertEquals(sampleEntity.getName(), view.getName());
+        assertEquals(sampleEntity.getName().toLowerCase(), view.getNameLowercase());
+    }
+
+    @Test
+    public void testFactoryWrapAll() {
+        EntityViewFactory factory = AppBeans.get(EntityViewFactory.NAME);
+        List<SampleEntity> entities = dataManager.load(SampleEntity.class).list();
+        List<SampleEntity> source = new ArrayList<>(entities);
+        source.add(null);
+        List<SampleMinimalView> views = factory.wrapAll(source, SampleMinimalView.class);
+        assertEquals(source.size(), views.size());
+        for (int i = 0; i < entities.size(); i++) {
+            assertEquals(SampleMinimalWithUserView.class, views.get(i).getInterfaceClass());
+            assertEquals(entities.get(i).getName(), views.get(i).getName());
+            assertSame(entities.get(i), factory.unwrap(views.get(i)));
+        }
+        assertNull(views.get(entities.size()));
+        assertSame(user, factory.unwrap(user));
+    }
+
+    @Test
+    public void testPartialReloadKeepsChanges() {
+        SampleEntity sampleEntity = dataManager.load(SampleEntity.class).id(data1.getId()).view(View.MINIMAL).one();
+        sampleEntity.setName("Data1 changed");
+        SampleWithUserView view = EntityViewWrapper.wrap(sampleEntity, SampleWithUserView.class);
+
+        assertEquals(user.getName(), view.getUser().getName());
+        assertSame(sampleEntity, view.getOrigin());
+        assertEquals("Data1 changed", view.getName());
+        assertTrue(AppBeans.get(EntityStates.class).isLoadedWithView(sampleEntity, viewsConfig.getViewByInterface(SampleWithUserView.class)));
+    }
+
+    @Test
+    public void testLoadingInTransaction() {
+        EntityStates entityStates = AppBeans.get(EntityStates.class);
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+            SampleEntity managed = em.find(SampleEntity.class, data1.getId());
+            SampleWithUserView managedView = EntityViewWrapper.wrap(managed, SampleWithUserView.class);
+            assertEquals(user.getName(), managedView.getUser().getName());
+            assertSame(managed, managedView.getOrigin());
+
+            //Detached entities are not attached to the persistence context, missing attributes are merged into them
+            SampleEntity detached = dataManager.load(SampleEntity.class).id(data2.getId()).view(View.MINIMAL).one();
+            SampleWithUserView detachedView = EntityViewWrapper.wrap(detached, SampleWithUserView.class);
+            assertEquals(user.getName(), detachedView.getUser().getName());
+            assertSame(detached, detachedView.getOrigin());
+            assertTrue(entityStates.isDetached(detachedView.getOrigin()));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void testLoadListWrapsLazily() {
+        List<SampleWithUserView> views = dataManager.load(SampleWithUserView.class).list();
+        assertTrue(views instanceof LazyWrappingList);
+        assertEquals(2, views.size());
+        SampleWithUserView first = views.get(0);
+        assertSame(first, views.get(0));
+        assertEquals(0, views.indexOf(first));
+
+        SampleWithUserView second = views.remove(1);
+        assertEquals(1, views.size());
+        views.add(0, second);
+        assertSame(second, views.get(0));
+        assertSame(first, views.get(1));
+    }
+
+    @Test
+    public void testLazyWrappingListSerialization() throws Exception {
+        List<SampleWithUserView> views = dataManager.load(SampleWithUserView.class).list();
+        assertTrue(views instanceof LazyWrappingList);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(views);
+        }
+        List<SampleWithUserView> deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            //noinspection unchecked
+            deserialized = (List<SampleWithUserView>) in.readObject();
+        }
+
+        assertEquals(views.size(), deserialized.size());
+        for (int i = 0; i < views.size(); i++) {
+            assertEquals(views.get(i).getId(), deserialized.get(i).getId());
+            assertEquals(views.get(i).getName(), deserialized.get(i).getName());
+            assertEquals(views.get(i).getUser().getName(), deserialized.get(i).getUser().getName());
+        }
+    }
+
+    @Test
+    public void testFactoryWrapAllPrefetched() {
+        EntityViewFactory factory = AppBeans.get(EntityViewFactory.NAME);
+        EntityStates entityStates = AppBeans.get(EntityStates.class);
+        View view = viewsConfig.getViewByInterface(SampleWithUserView.class);
+        List<SampleEntity> entities = dataManager.load(SampleEntity.class).view(View.MINIMAL).list();
+        assertTrue(entities.stream().noneMatch(e -> entityStates.isLoadedWithView(e, view)));
+
+        entities.get(0).setName("Changed");
+        List<SampleWithUserView> views = factory.wrapAllPrefetched(entities, SampleWithUserView.class, null);
+        assertEquals(entities.size(), views.size());
+        //Missing attributes are merged into the instances, unsaved changes are kept
+        assertEquals("Changed", views.get(0).getName());
+        for (int i = 0; i < entities.size(); i++) {
+            assertSame(entities.get(i), views.get(i).getOrigin());
+            assertTrue(entityStates.isLoadedWithView(views.get(i).getOrigin(), view));
+            assertEquals(user.getName(), views.get(i).getUser().getName());
+        }
+
+        List<SampleEntity> minimal = dataManager.load(SampleEntity.class).view(View.MINIMAL).list();
+        WrappingList<SampleEntity, SampleWithUserView, UUID> list = new WrappingList<>(minimal, SampleWithUserView.class, factory);
+        list.prefetch();
+        for (int i = 0; i < minimal.size(); i++) {
+            assertSame(minimal.get(i), list.get(i).getOrigin());
+            assertTrue(entityStates.isLoadedWithView(list.get(i).getOrigin(), view));
+        }
+    }
 
 }
@@ -0,0 +1,100 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithLazyParentView;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LazyPropertyTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final String TABLE = "PLAYGROUND_SAMPLE_ENTITY";
+
+    private static final String CHILDREN_QUERY = "select e from playground$SampleEntity e where e.parent is not null order by e.name";
+
+    private Persistence persistence;
+    private DataManager dataManager;
+    private ViewsConfiguration viewsConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        dataManager = AppBeans.get(DataManager.class);
+        viewsConfig = AppBeans.get(ViewsConfiguration.class);
+
+        SampleEntity parent1 = metadata.create(SampleEntity.class);
+        parent1.setName("Parent1");
+        SampleEntity parent2 = metadata.create(SampleEntity.class);
+        parent2.setName("Parent2");
+        SampleEntity child1 = metadata.create(SampleEntity.class);
+        child1.setName("Child1");
+        child1.setParent(parent1);
+        SampleEntity child2 = metadata.create(SampleEntity.class);
+        child2.setName("Child2");
+        child2.setParent(parent2);
+
+        persistence.runInTransaction(em -> {
+            em.persist(parent1);
+            em.persist(parent2);
+            em.persist(child1);
+            em.persist(child2);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testLazyPropertyIsNotInView() {
+        ViewsConfigurationBean.ViewInterfaceInfo info = viewsConfig.getViewInterfaceDefinition(SampleWithLazyParentView.class);
+        assertFalse(info.getView().containsProperty("parent"));
+        assertTrue(info.getView().containsProperty("name"));
+        assertTrue(info.getLazyViews().get("parent").containsProperty("parent"));
+    }
+
+    @Test
+    public void testLazyPropertyBatchLoading() {
+        SqlCapture<List<SampleWithLazyParentView>> load =
+                SqlCapture.capture(() -> dataManager.load(SampleWithLazyParentView.class).query(CHILDREN_QUERY).list());
+        List<SampleWithLazyParentView> children = load.getResult();
+        assertEquals(2, children.size());
+        //Parents are not loaded with children
+        List<String> listSql = load.getSelects();
+        assertEquals(listSql.get(0), 1, StringUtils.countMatches(listSql.get(0), TABLE));
+        assertTrue(listSql.toString(), listSql.stream().skip(1).noneMatch(s -> s.contains(TABLE)));
+
+        SqlCapture<String> firstRead = SqlCapture.capture(() -> children.get(0).getParent().getName());
+        assertEquals("Parent1", firstRead.getResult());
+        assertFalse(firstRead.getSelects().isEmpty());
+        assertTrue(firstRead.getSelects().get(0), firstRead.getSelects().get(0).contains(" IN "));
+
+        //Parents of both children are loaded on the first read
+        SqlCapture<String> secondRead = SqlCapture.capture(() -> children.get(1).getParent().getName());
+        assertEquals("Parent2", secondRead.getResult());
+        assertTrue(secondRead.getSelects().toString(), secondRead.getSelects().isEmpty());
+    }
+}
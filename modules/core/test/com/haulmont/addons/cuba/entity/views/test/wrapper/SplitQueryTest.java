@@ -0,0 +1,124 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.EntityParameter;
+import com.haulmont.addons.cuba.entity.views.test.app.entity.SampleEntity;
+import com.haulmont.addons.cuba.entity.views.test.app.views.sample.SampleWithSplitParameters;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.FetchMode;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitQueryTest {
+
+    @ClassRule
+    public static final AppTestContainer cont = AppTestContainer.Common.INSTANCE;
+
+    private static final String PARAMETER_TABLE = "PLAYGROUND_ENTITY_PARAMETER";
+
+    private static final String CHILDREN_QUERY = "select e from playground$SampleEntity e where e.parent is not null order by e.name";
+
+    private Persistence persistence;
+    private DataManager dataManager;
+    private ViewsConfiguration viewsConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.getSpringAppContext().publishEvent(new AppContextStartedEvent(cont.getSpringAppContext()));
+        Metadata metadata = cont.metadata();
+        persistence = cont.persistence();
+        dataManager = AppBeans.get(DataManager.class);
+        viewsConfig = AppBeans.get(ViewsConfiguration.class);
+
+        SampleEntity parent1 = metadata.create(SampleEntity.class);
+        parent1.setName("Parent1");
+        SampleEntity parent2 = metadata.create(SampleEntity.class);
+        parent2.setName("Parent2");
+        SampleEntity child1 = metadata.create(SampleEntity.class);
+        child1.setName("Child1");
+        child1.setParent(parent1);
+        SampleEntity child2 = metadata.create(SampleEntity.class);
+        child2.setName("Child2");
+        child2.setParent(parent2);
+
+        persistence.runInTransaction(em -> {
+            em.persist(parent1);
+            em.persist(parent2);
+            em.persist(child1);
+            em.persist(child2);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        runner.update("delete from PLAYGROUND_ENTITY_PARAMETER");
+        runner.update("delete from PLAYGROUND_SAMPLE_ENTITY");
+    }
+
+    @Test
+    public void testSplitQueryIsNotInView() {
+        ViewsConfigurationBean.ViewInterfaceInfo info = viewsConfig.getViewInterfaceDefinition(SampleWithSplitParameters.class);
+        assertFalse(info.getView().containsProperty("params"));
+        assertFalse(info.getView().containsProperty("compParams"));
+        assertEquals(2, info.getSplitProperties().size());
+        assertEquals(FetchMode.BATCH, info.getLazyViews().get("params").getProperty("params").getFetchMode());
+    }
+
+    @Test
+    public void testSplitQueryLoading() {
+        Metadata metadata = cont.metadata();
+        List<SampleEntity> children = dataManager.load(SampleEntity.class).query(CHILDREN_QUERY).list();
+        persistence.runInTransaction(em -> {
+            for (SampleEntity child : children) {
+                for (int i = 0; i < 3; i++) {
+                    EntityParameter param = metadata.create(EntityParameter.class);
+                    param.setName(child.getName() + "Param" + i);
+                    param.setSampleEntity(child);
+                    em.persist(param);
+                }
+                EntityParameter compParam = metadata.create(EntityParameter.class);
+                compParam.setName(child.getName() + "CompParam");
+                compParam.setCompEntity(child);
+                em.persist(compParam);
+            }
+        });
+
+        SqlCapture<List<SampleWithSplitParameters>> load =
+                SqlCapture.capture(() -> dataManager.load(SampleWithSplitParameters.class).query(CHILDREN_QUERY).list());
+        List<SampleWithSplitParameters> views = load.getResult();
+        assertEquals(2, views.size());
+        List<String> sql = load.getSelects();
+        //Root rows are loaded without joining collections
+        assertFalse(sql.isEmpty());
+        assertFalse(sql.get(0), sql.get(0).contains(PARAMETER_TABLE));
+        //Every collection is loaded by one query for both parents
+        List<String> paramQueries = sql.stream().filter(s -> s.contains(PARAMETER_TABLE)).collect(Collectors.toList());
+        assertEquals(sql.toString(), 2, paramQueries.size());
+
+        List<String> readSql = SqlCapture.capture(() -> {
+            for (SampleWithSplitParameters view : views) {
+                assertEquals(3, view.getParams().size());
+                assertEquals(1, view.getCompParams().size());
+                assertTrue(view.getCompParams().get(0).getName().startsWith(view.getName()));
+            }
+            return views;
+        }).getSelects();
+        assertTrue(readSql.toString(), readSql.isEmpty());
+    }
+}
@@ -0,0 +1,61 @@
+package com.haulmont.addons.cuba.entity.views.test.wrapper;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Collects SELECT statements logged by EclipseLink while an action loads or reads entity views.
+ *
+ * @param <T> Result of the action.
+ */
+final class SqlCapture<T> {
+
+    private final T result;
+    private final List<String> selects;
+
+    private SqlCapture(T result, List<String> selects) {
+        this.result = result;
+        this.selects = selects;
+    }
+
+    /**
+     * Runs an action and collects SELECT statements executed by it.
+     *
+     * @param action Action that loads or reads entity views.
+     * @param <T>    Result of the action.
+     * @return Result of the action and upper-cased SELECT statements in execution order.
+     */
+    static <T> SqlCapture<T> capture(Supplier<T> action) {
+        Logger sqlLogger = (Logger) LoggerFactory.getLogger("eclipselink.sql");
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        sqlLogger.addAppender(appender);
+        T result;
+        try {
+            result = action.get();
+        } finally {
+            sqlLogger.detachAppender(appender);
+            appender.stop();
+        }
+        List<String> selects = appender.list.stream()
+                .map(ILoggingEvent::getFormattedMessage)
+                .map(String::toUpperCase)
+                .filter(s -> s.trim().startsWith("SELECT"))
+                .collect(Collectors.toList());
+        return new SqlCapture<>(result, selects);
+    }
+
+    T getResult() {
+        return result;
+    }
+
+    List<String> getSelects() {
+        return selects;
+    }
+}
@@ -24,15 +24,16 @@ public interface BaseEntityView<T extends Entity<K>, K> extends Entity<K>, Seria
 
     /**
      * Returns actual Entity View Interface class because effective
-     * interface instance's class is {@link java.lang.reflect.Proxy}
+     * interface instance's class is either {@link java.lang.reflect.Proxy} or a generated class.
      * @param <V> Entity View Interface class.
      * @return Effective view interface class.
      */
     <V extends BaseEntityView<T, K>> Class<V> getInterfaceClass();
 
     /**
-     * Applies new view interface to an underlying entity. Current implementation may relod entity and
-     * does not commit changes neither throws any exceptions, so if you reload modified entity, all changes will be lost.
+     * Applies new view interface to an underlying entity. Attributes that are missing in a detached entity are
+     * loaded and merged into it, attributes that are already loaded including unsaved changes are kept as is.
+     * Changes are not committed.
      * @param targetView view class that should be applied to underlying entity.
      * @param <V> target view instance class.
      * @return target view instance with the same underlying entity.
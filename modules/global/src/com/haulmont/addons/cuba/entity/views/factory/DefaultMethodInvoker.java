@@ -0,0 +1,108 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Invoker of default methods of entity view interfaces for {@link java.lang.reflect.Proxy} based views.
+ * A method handle is resolved once per view interface and method and cached, so an invocation does not
+ * look up anything.
+ * <br>
+ * On Java 9+ handles are resolved using <code>MethodHandles.privateLookupIn</code> and
+ * {@link MethodHandles.Lookup#findSpecial(Class, String, MethodType, Class)}. The private
+ * {@link MethodHandles.Lookup} constructor is used on Java 8 only.
+ *
+ * @link https://blog.jooq.org/2018/03/28/correct-reflective-access-to-interface-default-methods-in-java-8-9-10/
+ */
+final class DefaultMethodInvoker {
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultMethodInvoker.class);
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    private static final ClassValue<Map<Method, DefaultMethodInvoker>> INVOKERS = new ClassValue<Map<Method, DefaultMethodInvoker>>() {
+        @Override
+        protected Map<Method, DefaultMethodInvoker> computeValue(Class<?> viewInterface) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final MethodHandle handle;
+
+    private DefaultMethodInvoker(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Returns cached invoker of a default method.
+     *
+     * @param viewInterface Entity view interface implemented by the proxy.
+     * @param method        Default method, may be declared in a super interface.
+     * @return Method invoker.
+     * @throws UnsupportedOperationException if the method cannot be accessed.
+     */
+    static DefaultMethodInvoker forMethod(Class<?> viewInterface, Method method) {
+        Map<Method, DefaultMethodInvoker> invokers = INVOKERS.get(viewInterface);
+        DefaultMethodInvoker invoker = invokers.get(method);
+        if (invoker == null) {
+            invoker = invokers.computeIfAbsent(method, m -> create(viewInterface, m));
+        }
+        return invoker;
+    }
+
+    /**
+     * Invokes default method.
+     *
+     * @param proxy Entity view instance.
+     * @param args  Method arguments, may be <code>null</code> for methods without parameters.
+     * @return Invocation result.
+     * @throws Throwable Exception thrown by the method.
+     */
+    Object invoke(Object proxy, Object[] args) throws Throwable {
+        return handle.invokeExact(proxy, args);
+    }
+
+    private static DefaultMethodInvoker create(Class<?> viewInterface, Method method) {
+        try {
+            Method interfaceMethod = viewInterface.getMethod(method.getName(), method.getParameterTypes());
+            Class<?> declaringClass = interfaceMethod.getDeclaringClass();
+            log.trace("Creating invoker for default method {} from interface {}", method.getName(), declaringClass);
+            MethodHandle handle;
+            if (PRIVATE_LOOKUP_IN != null) {
+                MethodHandles.Lookup lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, declaringClass, MethodHandles.lookup());
+                handle = lookup.findSpecial(declaringClass, interfaceMethod.getName(),
+                        MethodType.methodType(interfaceMethod.getReturnType(), interfaceMethod.getParameterTypes()), declaringClass);
+            } else {
+                //Java 8 only, the constructor is not accessible in Java 9+
+                Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class);
+                constructor.setAccessible(true);
+                handle = constructor.newInstance(declaringClass)
+                        .in(declaringClass)
+                        .unreflectSpecial(interfaceMethod, declaringClass);
+            }
+            return new DefaultMethodInvoker(handle.asType(handle.type().generic())
+                    .asSpreader(Object[].class, interfaceMethod.getParameterCount())
+                    .asType(INVOKER_TYPE));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new UnsupportedOperationException(String.format("Method %s is not supported in view interfaces", method.getName()), e);
+        }
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Cached accessor that invokes an entity method without {@link Method#invoke(Object, Object...)}. Getters and setters
+ * are invoked through functional interfaces created by {@link LambdaMetafactory}, other methods through a
+ * {@link MethodHandle}. Accessors are created once per method and cached per declaring class, so they are shared
+ * by all view interfaces that refer the same entity property.
+ * <br>
+ * Unlike reflective invocation, exceptions thrown by entity methods are not wrapped into
+ * {@link InvocationTargetException}.
+ */
+abstract class EntityMethodAccessor {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityMethodAccessor.class);
+
+    private static final ClassValue<Map<Method, EntityMethodAccessor>> ACCESSORS = new ClassValue<Map<Method, EntityMethodAccessor>>() {
+        @Override
+        protected Map<Method, EntityMethodAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * Invokes the entity method.
+     *
+     * @param target Entity instance.
+     * @param args   Method arguments, may be <code>null</code> for methods without parameters.
+     * @return Invocation result, <code>null</code> for void methods.
+     * @throws Throwable Exception thrown by the entity method.
+     */
+    abstract Object invoke(Object target, Object[] args) throws Throwable;
+
+    /**
+     * Returns cached accessor for a method.
+     *
+     * @param method Entity method, its declaring class must be public.
+     * @return Method accessor.
+     */
+    static EntityMethodAccessor forMethod(Method method) {
+        return ACCESSORS.get(method.getDeclaringClass()).computeIfAbsent(method, EntityMethodAccessor::create);
+    }
+
+    private static EntityMethodAccessor create(Method method) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle;
+        try {
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            log.debug("Method {} is not accessible through method handles, reflection will be used", method);
+            return new ReflectiveAccessor(method);
+        }
+        if (isVisible(method)) {
+            try {
+                if (isGetter(method)) {
+                    return new GetterAccessor(createGetter(lookup, method, handle));
+                }
+                if (isSetter(method)) {
+                    return new SetterAccessor(createSetter(lookup, method, handle));
+                }
+            } catch (Throwable e) {
+                log.debug("Cannot create lambda accessor for {}, method handle will be used", method, e);
+            }
+        }
+        return new MethodHandleAccessor(handle, method.getParameterCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> createGetter(MethodHandles.Lookup lookup, Method method, MethodHandle handle) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup,
+                "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                handle,
+                MethodType.methodType(ClassUtils.primitiveToWrapper(method.getReturnType()), method.getDeclaringClass()));
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> createSetter(MethodHandles.Lookup lookup, Method method, MethodHandle handle) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup,
+                "accept",
+                MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class),
+                handle,
+                MethodType.methodType(void.class, method.getDeclaringClass(), ClassUtils.primitiveToWrapper(method.getParameterTypes()[0])));
+        return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    private static boolean isGetter(Method method) {
+        return method.getParameterCount() == 0 && method.getReturnType() != void.class;
+    }
+
+    private static boolean isSetter(Method method) {
+        return method.getParameterCount() == 1 && method.getReturnType() == void.class;
+    }
+
+    /**
+     * Lambda classes are defined in this class' loader, so all types used by the method must be visible from it.
+     * Entities of hot deployed or isolated modules are accessed through method handles.
+     */
+    private static boolean isVisible(Method method) {
+        ClassLoader loader = EntityMethodAccessor.class.getClassLoader();
+        if (!isVisible(method.getDeclaringClass(), loader) || !isVisible(method.getReturnType(), loader)) {
+            return false;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (!isVisible(parameterType, loader)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader loader) {
+        if (type.isPrimitive() || type.getClassLoader() == null || type.getClassLoader() == loader) {
+            return true;
+        }
+        try {
+            return Class.forName(type.getName(), false, loader) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static class GetterAccessor extends EntityMethodAccessor {
+
+        private final Function<Object, Object> getter;
+
+        GetterAccessor(Function<Object, Object> getter) {
+            this.getter = getter;
+        }
+
+        @Override
+        Object invoke(Object target, Object[] args) {
+            return getter.apply(target);
+        }
+    }
+
+    private static class SetterAccessor extends EntityMethodAccessor {
+
+        private final BiConsumer<Object, Object> setter;
+
+        SetterAccessor(BiConsumer<Object, Object> setter) {
+            this.setter = setter;
+        }
+
+        @Override
+        Object invoke(Object target, Object[] args) {
+            setter.accept(target, args[0]);
+            return null;
+        }
+    }
+
+    private static class MethodHandleAccessor extends EntityMethodAccessor {
+
+        private final MethodHandle handle;
+
+        MethodHandleAccessor(MethodHandle handle, int parameterCount) {
+            this.handle = handle.asType(handle.type().generic())
+                    .asSpreader(Object[].class, parameterCount)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+        }
+
+        @Override
+        Object invoke(Object target, Object[] args) throws Throwable {
+            return handle.invokeExact(target, args);
+        }
+    }
+
+    private static class ReflectiveAccessor extends EntityMethodAccessor {
+
+        private final Method method;
+
+        ReflectiveAccessor(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        Object invoke(Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
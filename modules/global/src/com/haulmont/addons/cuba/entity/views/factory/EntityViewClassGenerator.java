@@ -0,0 +1,334 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.exception.ViewInitializationException;
+import com.haulmont.cuba.core.entity.Entity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates entity view implementation classes. For every entity view interface a class that extends
+ * {@link GeneratedEntityView} is created. Getters and setters that do not need result wrapping call entity methods
+ * directly, so JIT is able to inline them. Other methods are delegated to {@link ViewInterfaceInvocationHandler}.
+ * Default interface methods are inherited by the generated class and are not intercepted, unless their results
+ * may need wrapping.
+ */
+class EntityViewClassGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewClassGenerator.class);
+
+    static final String CLASS_NAME_SUFFIX = "$$EntityView";
+
+    static final String METHODS_FIELD = "METHODS";
+
+    private static final String SUPER_NAME = Type.getInternalName(GeneratedEntityView.class);
+    private static final String ENTITY_DESCRIPTOR = Type.getDescriptor(Entity.class);
+    private static final String DISPATCH_DESCRIPTOR = "(Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private final Class<? extends BaseEntityView> viewInterface;
+
+    private final Class<? extends Entity> entityClass;
+
+    private final ViewDispatchTable dispatchTable;
+
+    EntityViewClassGenerator(Class<? extends BaseEntityView> viewInterface, Class<? extends Entity> entityClass,
+                             ViewDispatchTable dispatchTable) {
+        this.viewInterface = viewInterface;
+        this.entityClass = entityClass;
+        this.dispatchTable = dispatchTable;
+    }
+
+    /**
+     * Generates and defines view implementation class.
+     *
+     * @return Class that extends {@link GeneratedEntityView} and implements view interface.
+     * @throws ViewInitializationException if the interface or the entity class cannot be accessed from generated code.
+     */
+    Class<? extends GeneratedEntityView> generate() {
+        if (!Modifier.isPublic(viewInterface.getModifiers()) || !Modifier.isPublic(entityClass.getModifiers())) {
+            throw new ViewInitializationException(String.format("Cannot generate implementation for %s: " +
+                    "both view interface and entity %s must be public", viewInterface.getName(), entityClass.getName()));
+        }
+        String className = viewInterface.getName() + CLASS_NAME_SUFFIX;
+        String internalName = className.replace('.', '/');
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+                internalName, null, SUPER_NAME, new String[]{Type.getInternalName(viewInterface)});
+
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, METHODS_FIELD, "[Ljava/lang/reflect/Method;", null, null).visitEnd();
+
+        generateConstructor(cw);
+
+        List<Method> dispatchedMethods = new ArrayList<>();
+        for (Method method : collectMethods()) {
+            Method entityMethod = getDirectDelegate(method);
+            if (entityMethod != null) {
+                log.trace("Method {} of {} will be delegated directly to {}", method.getName(), viewInterface, entityMethod);
+                generateDirectMethod(cw, method, entityMethod);
+            } else {
+                generateDispatchMethod(cw, internalName, method, dispatchedMethods.size());
+                dispatchedMethods.add(method);
+            }
+        }
+        cw.visitEnd();
+
+        ViewClassLoader classLoader = new ViewClassLoader(viewInterface.getClassLoader());
+        Class<?> generated = classLoader.define(className, cw.toByteArray());
+        try {
+            Field methodsField = generated.getField(METHODS_FIELD);
+            methodsField.set(null, dispatchedMethods.toArray(new Method[0]));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new ViewInitializationException(String.format("Cannot initialize generated class %s", className), e);
+        }
+        log.debug("Generated implementation {} for view {}, {} methods are dispatched through invocation handler",
+                className, viewInterface.getName(), dispatchedMethods.size());
+        //noinspection unchecked
+        return (Class<? extends GeneratedEntityView>) generated;
+    }
+
+    /**
+     * Collects interface methods that must be implemented by the generated class. Methods with the same signature
+     * declared in several interfaces are implemented once, default methods are inherited unless the entity has
+     * a method that should be invoked instead or the result may need wrapping (to keep the same behavior
+     * as the proxy).
+     *
+     * @return Methods to be implemented.
+     */
+    private Collection<Method> collectMethods() {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        Map<String, Boolean> hasDefault = new LinkedHashMap<>();
+        for (Method method : viewInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || isObjectMethod(method)) {
+                continue;
+            }
+            String signature = method.getName() + Type.getMethodDescriptor(method);
+            methods.putIfAbsent(signature, method);
+            hasDefault.merge(signature, method.isDefault(), Boolean::logicalOr);
+        }
+        List<Method> result = new ArrayList<>();
+        for (Map.Entry<String, Method> entry : methods.entrySet()) {
+            Method method = entry.getValue();
+            if (hasDefault.get(entry.getKey()) && isInheritedDefault(method)) {
+                continue;
+            }
+            result.add(method);
+        }
+        return result;
+    }
+
+    private boolean isInheritedDefault(Method method) {
+        ViewDispatchTable.Entry entry = dispatchTable.get(method);
+        if (entry != null && entry.getKind() == ViewDispatchTable.Kind.DEFAULT_METHOD) {
+            return !ViewDispatchTable.isWrappableResultType(method.getReturnType());
+        }
+        return entry == null || entry.getKind() == ViewDispatchTable.Kind.UNRESOLVED;
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        try {
+            Object.class.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Finds entity method that can be invoked directly instead of going through the invocation handler.
+     *
+     * @param method View interface method.
+     * @return Entity method or <code>null</code> if the invocation must be dispatched to the handler.
+     */
+    private Method getDirectDelegate(Method method) {
+        ViewDispatchTable.Entry entry = dispatchTable.get(method);
+        if (entry == null || entry.getKind() != ViewDispatchTable.Kind.GETTER || entry.isLazy()) {
+            return null;
+        }
+        Method entityMethod = entry.getTargetMethod();
+        if (BaseEntityView.class.isAssignableFrom(method.getReturnType())
+                || !Modifier.isPublic(entityMethod.getDeclaringClass().getModifiers())) {
+            return null;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (BaseEntityView.class.isAssignableFrom(parameterType)) {
+                return null;
+            }
+        }
+        return entityMethod;
+    }
+
+    private void generateConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER_NAME, "<init>", "(Ljava/lang/Object;)V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Generates <code>return ((EntityClass) loadedEntity()).method(args)</code>.
+     */
+    private void generateDirectMethod(ClassWriter cw, Method method, Method entityMethod) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, method.getName(),
+                Type.getMethodDescriptor(method), null, getExceptions(method));
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SUPER_NAME, "loadedEntity", "()" + ENTITY_DESCRIPTOR, false);
+        Class<?> owner = entityMethod.getDeclaringClass();
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(owner));
+        int slot = 1;
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            Type type = Type.getType(parameterType);
+            mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), slot);
+            slot += type.getSize();
+        }
+        mv.visitMethodInsn(owner.isInterface() ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
+                Type.getInternalName(owner), entityMethod.getName(), Type.getMethodDescriptor(entityMethod), owner.isInterface());
+        Type returnType = Type.getType(method.getReturnType());
+        mv.visitInsn(returnType.getSort() == Type.VOID ? Opcodes.RETURN : returnType.getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Generates <code>return (ReturnType) dispatch(METHODS[index], new Object[]{args})</code>.
+     */
+    private void generateDispatchMethod(ClassWriter cw, String internalName, Method method, int index) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, method.getName(),
+                Type.getMethodDescriptor(method), null, getExceptions(method));
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, internalName, METHODS_FIELD, "[Ljava/lang/reflect/Method;");
+        pushInt(mv, index);
+        mv.visitInsn(Opcodes.AALOAD);
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            //java.lang.reflect.Proxy passes null for methods without parameters
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            pushInt(mv, parameterTypes.length);
+            mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            int slot = 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Type type = Type.getType(parameterTypes[i]);
+                mv.visitInsn(Opcodes.DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), slot);
+                box(mv, type);
+                mv.visitInsn(Opcodes.AASTORE);
+                slot += type.getSize();
+            }
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SUPER_NAME, "dispatch", DISPATCH_DESCRIPTOR, false);
+
+        Type returnType = Type.getType(method.getReturnType());
+        if (returnType.getSort() == Type.VOID) {
+            mv.visitInsn(Opcodes.POP);
+            mv.visitInsn(Opcodes.RETURN);
+        } else {
+            unbox(mv, returnType);
+            mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static String[] getExceptions(Method method) {
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        String[] result = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            result[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        return result;
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        }
+    }
+
+    private static void box(MethodVisitor mv, Type type) {
+        Type boxed = getBoxedType(type);
+        if (boxed != null) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, boxed.getInternalName(), "valueOf",
+                    Type.getMethodDescriptor(boxed, type), false);
+        }
+    }
+
+    private static void unbox(MethodVisitor mv, Type type) {
+        Type boxed = getBoxedType(type);
+        if (boxed == null) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
+        } else {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, boxed.getInternalName());
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, boxed.getInternalName(), type.getClassName() + "Value",
+                    Type.getMethodDescriptor(type), false);
+        }
+    }
+
+    private static Type getBoxedType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return Type.getType(Boolean.class);
+            case Type.CHAR:
+                return Type.getType(Character.class);
+            case Type.BYTE:
+                return Type.getType(Byte.class);
+            case Type.SHORT:
+                return Type.getType(Short.class);
+            case Type.INT:
+                return Type.getType(Integer.class);
+            case Type.FLOAT:
+                return Type.getType(Float.class);
+            case Type.LONG:
+                return Type.getType(Long.class);
+            case Type.DOUBLE:
+                return Type.getType(Double.class);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Class loader for generated classes. Generated code refers to the view interface and the entity (visible
+     * from the interface's class loader) and to {@link GeneratedEntityView} (visible from the add-on class loader).
+     */
+    private static class ViewClassLoader extends ClassLoader {
+
+        ViewClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return Class.forName(name, false, GeneratedEntityView.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.cuba.core.global.AppBeans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Proxy;
+
+/**
+ * Strategy of entity view instances creation. The engine is selected by <code>entityviews.engine</code>
+ * application property, {@link #GENERATED} is used by default.
+ *
+ * @see com.haulmont.addons.cuba.entity.views.global.EntityViewsConfig#getEngine()
+ */
+public enum EntityViewEngine {
+
+    /**
+     * Creates {@link Proxy} instances, every method call goes through {@link ViewInterfaceInvocationHandler}.
+     */
+    PROXY {
+        @Override
+        <V extends BaseEntityView> V newInstance(ViewInterfaceInvocationHandler handler, Class<V> viewInterface) {
+            //noinspection unchecked
+            return (V) Proxy.newProxyInstance(handler.getEntity().getClass().getClassLoader()
+                    , new Class<?>[]{viewInterface}
+                    , handler);
+        }
+    },
+
+    /**
+     * Creates instances of classes generated once per effective view interface. Getters and setters of such classes
+     * call entity methods directly. If a class cannot be generated for an interface, {@link #PROXY} is used for it.
+     */
+    GENERATED {
+        @Override
+        <V extends BaseEntityView> V newInstance(ViewInterfaceInvocationHandler handler, Class<V> viewInterface) {
+            MethodHandle constructor = CONSTRUCTORS.get(viewInterface);
+            if (constructor == null) {
+                return PROXY.newInstance(handler, viewInterface);
+            }
+            try {
+                //noinspection unchecked
+                return (V) (Object) constructor.invokeExact((Object) handler);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(String.format("Cannot instantiate entity view %s", viewInterface.getName()), e);
+            }
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewEngine.class);
+
+    /**
+     * Constructors of generated classes, <code>null</code> value means that the class cannot be generated.
+     */
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> viewInterface) {
+            //noinspection unchecked
+            Class<? extends BaseEntityView> viewClass = (Class<? extends BaseEntityView>) viewInterface;
+            ViewsConfigurationBean.ViewInterfaceInfo info = AppBeans.get(ViewsConfiguration.class).getViewInterfaceDefinition(viewClass);
+            try {
+                Class<? extends GeneratedEntityView> generated =
+                        new EntityViewClassGenerator(viewClass, info.getEntityClass(), info.getDispatchTable()).generate();
+                return MethodHandles.publicLookup()
+                        .findConstructor(generated, MethodType.methodType(void.class, Object.class))
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (Exception | LinkageError e) {
+                log.warn("Cannot generate implementation for view {}, proxy will be used instead", viewInterface.getName(), e);
+                return null;
+            }
+        }
+    };
+
+    /**
+     * Creates entity view instance.
+     *
+     * @param handler       Invocation handler that holds the entity.
+     * @param viewInterface Effective entity view interface.
+     * @param <V>           Entity view interface class.
+     * @return Entity view instance.
+     */
+    abstract <V extends BaseEntityView> V newInstance(ViewInterfaceInvocationHandler handler, Class<V> viewInterface);
+}
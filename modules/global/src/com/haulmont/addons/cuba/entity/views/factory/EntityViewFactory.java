@@ -0,0 +1,129 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.View;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Creates entity views for entities. This is a Spring bean counterpart of {@link EntityViewWrapper} that should be
+ * injected into application and framework beans.
+ */
+public interface EntityViewFactory {
+
+    String NAME = "entity_views_core_EntityViewFactory";
+
+    /**
+     * Wraps entity instance into entity view interface using configured engine.
+     *
+     * @param entity        Entity instance to be wrapped.
+     * @param viewInterface Entity View Interface class.
+     * @param <E>           Entity Class
+     * @param <V>           Effective entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return Instance that implements entity view interface of class <code>V</code>, <code>null</code> if
+     * the entity is <code>null</code>.
+     */
+    <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V wrap(E entity, Class<V> viewInterface);
+
+    /**
+     * Wraps entity instance into entity view interface using the given engine.
+     *
+     * @param entity        Entity instance to be wrapped.
+     * @param viewInterface Entity View Interface class.
+     * @param engine        Engine that creates entity view instances.
+     * @param <E>           Entity Class
+     * @param <V>           Effective entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return Instance that implements entity view interface of class <code>V</code>, <code>null</code> if
+     * the entity is <code>null</code>.
+     */
+    <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V wrap(E entity, Class<V> viewInterface, EntityViewEngine engine);
+
+    /**
+     * Wraps entity instance that was loaded with a CUBA view. If it is the view of the effective entity view
+     * or a view that covers it, the entity is not checked for missing attributes and never reloaded.
+     *
+     * @see com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration#isViewCovered(View, View)
+     *
+     * @param entity        Entity instance to be wrapped.
+     * @param viewInterface Entity View Interface class.
+     * @param loadedView    CUBA view the entity was loaded with, <code>null</code> if unknown.
+     * @param <E>           Entity Class
+     * @param <V>           Effective entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return Instance that implements entity view interface of class <code>V</code>, <code>null</code> if
+     * the entity is <code>null</code>.
+     */
+    <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V wrapLoaded(E entity, Class<V> viewInterface, @Nullable View loadedView);
+
+    /**
+     * Wraps entities into entity view interface. The view interface is resolved once for the whole collection.
+     *
+     * @param entities      Entities to be wrapped, <code>null</code> elements are kept as is.
+     * @param viewInterface Entity View Interface class.
+     * @param <E>           Entity Class
+     * @param <V>           Effective entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return List of entity views in the same order as the entities.
+     */
+    <E extends Entity<K>, V extends BaseEntityView<E, K>, K> List<V> wrapAll(Collection<E> entities, Class<V> viewInterface);
+
+    /**
+     * Wraps entities that were loaded with a CUBA view into entity view interface.
+     *
+     * @param entities      Entities to be wrapped, <code>null</code> elements are kept as is.
+     * @param viewInterface Entity View Interface class.
+     * @param loadedView    CUBA view the entities were loaded with, <code>null</code> if unknown.
+     * @param <E>           Entity Class
+     * @param <V>           Effective entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return List of entity views in the same order as the entities.
+     * @see #wrapLoaded(Entity, Class, View)
+     */
+    <E extends Entity<K>, V extends BaseEntityView<E, K>, K> List<V> wrapAll(Collection<E> entities, Class<V> viewInterface, @Nullable View loadedView);
+
+    /**
+     * Wraps entities into entity view interface loading attributes of the effective view missing in entities
+     * beforehand. Such entities are loaded in batches of {@link com.haulmont.addons.cuba.entity.views.global.EntityViewsConfig#getPrefetchBatchSize()} instances with
+     * one query per batch and the missing attributes are merged into the given instances, so entity views
+     * do not reload them one by one on property access and unsaved changes are kept.
+     *
+     * @param entities      Entities to be wrapped, <code>null</code> elements are kept as is.
+     * @param viewInterface Entity View Interface class.
+     * @param loadedView    CUBA view the entities were loaded with, <code>null</code> if unknown.
+     * @param <E>           Entity Class
+     * @param <V>           Effective entity view interface class.
+     * @param <K>           Entity ID key class.
+     * @return List of entity views in the same order as the entities.
+     */
+    <E extends Entity<K>, V extends BaseEntityView<E, K>, K> List<V> wrapAllPrefetched(Collection<E> entities, Class<V> viewInterface, @Nullable View loadedView);
+
+    /**
+     * Loads a property for detached entities that miss it and sets loaded values into the entities. Entities are
+     * loaded in batches of {@link com.haulmont.addons.cuba.entity.views.global.EntityViewsConfig#getPrefetchBatchSize()} instances with one query per batch.
+     *
+     * @param entities     Entities, entities that are not detached or already have the property are skipped.
+     * @param propertyName Property name.
+     * @param view         Partial CUBA view that contains the property.
+     * @return Number of entities the property was loaded for.
+     */
+    int loadProperty(Collection<? extends Entity> entities, String propertyName, View view);
+
+    /**
+     * Returns an entity underlying the entity view.
+     *
+     * @param entity Entity view or entity.
+     * @param <E>    Entity class.
+     * @return Origin entity for entity views, the same instance for plain entities.
+     */
+    <E extends Entity> E unwrap(Entity entity);
+
+    /**
+     * @return Engine used by default to create entity views.
+     */
+    EntityViewEngine getEngine();
+}
@@ -0,0 +1,317 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.global.EntityViewsConfig;
+import com.haulmont.addons.cuba.entity.views.global.ViewsSupportEntityStates;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.EntityStates;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.View;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Default {@link EntityViewFactory} implementation. All collaborators are injected once, so wrapping an entity
+ * does not look up beans in application context.
+ * <br>
+ * The class is in application context despite on fact that it is not marked as a Spring component.
+ */
+public class EntityViewFactoryBean implements EntityViewFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewFactoryBean.class);
+
+    @Inject
+    protected ViewsConfiguration viewsConfiguration;
+
+    @Inject
+    protected EntityStates entityStates;
+
+    @Inject
+    protected DataManager dataManager;
+
+    @Inject
+    protected EntityViewsConfig entityViewsConfig;
+
+    private volatile EntityViewEngine engine;
+
+    @Override
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V wrap(E entity, Class<V> viewInterface) {
+        return wrap(entity, viewInterface, getEngine());
+    }
+
+    @Override
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V wrap(E entity, Class<V> viewInterface, EntityViewEngine engine) {
+        if (entity == null) {
+            return null;
+        }
+        log.trace("Wrapping entity: {} to view: {}", entity, viewInterface);
+        ViewsConfigurationBean.ViewInterfaceInfo info = getEffectiveViewInfo(viewInterface);
+        return createView(entity, info, engine, false);
+    }
+
+    @Override
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V wrapLoaded(E entity, Class<V> viewInterface, @Nullable View loadedView) {
+        if (entity == null) {
+            return null;
+        }
+        log.trace("Wrapping entity: {} loaded with view {} to view: {}", entity, loadedView, viewInterface);
+        ViewsConfigurationBean.ViewInterfaceInfo info = getEffectiveViewInfo(viewInterface);
+        return createView(entity, info, getEngine(), isEffectiveView(info, loadedView));
+    }
+
+    @Override
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> List<V> wrapAll(Collection<E> entities, Class<V> viewInterface) {
+        return wrapAll(entities, viewInterface, null);
+    }
+
+    @Override
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> List<V> wrapAll(Collection<E> entities, Class<V> viewInterface, @Nullable View loadedView) {
+        List<V> result = new ArrayList<>(entities.size());
+        if (entities.isEmpty()) {
+            return result;
+        }
+        ViewsConfigurationBean.ViewInterfaceInfo info = getEffectiveViewInfo(viewInterface);
+        EntityViewEngine engine = getEngine();
+        boolean loadedWithView = isEffectiveView(info, loadedView);
+        for (E entity : entities) {
+            result.add(entity == null ? null : createView(entity, info, engine, loadedWithView));
+        }
+        return result;
+    }
+
+    @Override
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> List<V> wrapAllPrefetched(Collection<E> entities, Class<V> viewInterface, @Nullable View loadedView) {
+        ViewsConfigurationBean.ViewInterfaceInfo info = getEffectiveViewInfo(viewInterface);
+        if (entities.isEmpty() || isEffectiveView(info, loadedView)) {
+            return wrapAll(entities, viewInterface, loadedView);
+        }
+        View view = info.getView();
+        Set<E> notLoaded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (E entity : entities) {
+            if (entity != null && !isLoadedWithView(entity, view)) {
+                notLoaded.add(entity);
+            }
+        }
+        mergeAll(notLoaded, view);
+
+        List<V> result = new ArrayList<>(entities.size());
+        EntityViewEngine engine = getEngine();
+        for (E entity : entities) {
+            //Merged entities and entities that cannot be merged are checked by their entity views as usual,
+            //a changed reference may still miss attributes
+            result.add(entity == null ? null : createView(entity, info, engine, !notLoaded.contains(entity)));
+        }
+        return result;
+    }
+
+    @Override
+    public <E extends Entity> E unwrap(Entity entity) {
+        //noinspection unchecked
+        return (E) (entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity);
+    }
+
+    @Override
+    public EntityViewEngine getEngine() {
+        EntityViewEngine result = engine;
+        if (result == null) {
+            result = entityViewsConfig.getEngine();
+            log.debug("Entity views engine: {}", result);
+            engine = result;
+        }
+        return result;
+    }
+
+    /**
+     * Loads view attributes missing in an entity, used by entity views on property access. Only missing
+     * attributes are fetched and merged into the entity, so its unsaved changes are kept.
+     *
+     * @param entity Entity to be reloaded.
+     * @param view   CUBA view.
+     * @param <E>    Entity class.
+     * @return The same entity with loaded attributes, or a reloaded instance if the entity is not detached.
+     * @see EntityViewReloader
+     */
+    protected <E extends Entity> E reload(E entity, View view) {
+        return new EntityViewReloader(entityStates, dataManager).reload(entity, view);
+    }
+
+    /**
+     * Loads a lazy property missing in an entity. If the entity belongs to a group, e.g. a list of entities,
+     * the property is loaded for all detached entities of the group that miss it using one query per
+     * {@link EntityViewsConfig#getPrefetchBatchSize()} entities.
+     *
+     * @param entity       Entity that misses the property.
+     * @param lazyView     View that contains the lazy property only.
+     * @param propertyName Property name.
+     * @param group        Entities to load the property for together with the entity, may be <code>null</code>.
+     * @param <E>          Entity class.
+     * @return The same entity with the loaded property, or a reloaded instance if the entity is not detached.
+     */
+    <E extends Entity> E loadLazyProperty(E entity, View lazyView, String propertyName, @Nullable Collection<? extends Entity> group) {
+        if (group != null && entityStates.isDetached(entity)) {
+            List<Entity> sameClass = new ArrayList<>(group.size());
+            for (Entity element : group) {
+                if (element != null && element.getClass() == entity.getClass()) {
+                    sameClass.add(element);
+                }
+            }
+            if (loadProperty(sameClass, propertyName, lazyView) > 0 && entityStates.isLoaded(entity, propertyName)) {
+                return entity;
+            }
+        }
+        return reload(entity, lazyView);
+    }
+
+    @Override
+    public int loadProperty(Collection<? extends Entity> entities, String propertyName, View view) {
+        Set<Entity> notLoaded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Entity entity : entities) {
+            if (entity != null && entityStates.isDetached(entity) && !entityStates.isLoaded(entity, propertyName)) {
+                notLoaded.add(entity);
+            }
+        }
+        if (notLoaded.isEmpty()) {
+            return 0;
+        }
+        log.debug("Loading property {} for {} entities", propertyName, notLoaded.size());
+        return mergeAll(notLoaded, view);
+    }
+
+    /**
+     * Loads view attributes of detached entities in batches and merges the attributes they miss into
+     * the instances, so unsaved changes are kept and no copies are created. Entities that are not detached
+     * are skipped.
+     *
+     * @param entities Entities to be loaded.
+     * @param view     CUBA view.
+     * @return Number of entities the attributes are merged into.
+     * @see EntityViewReloader#merge(Entity, Entity, View)
+     */
+    private int mergeAll(Collection<? extends Entity> entities, View view) {
+        List<Entity> detached = new ArrayList<>(entities.size());
+        for (Entity entity : entities) {
+            if (entity instanceof FetchGroupTracker && entityStates.isDetached(entity)) {
+                detached.add(entity);
+            }
+        }
+        Map<Object, Entity> loaded = reloadAll(detached, view);
+        EntityViewReloader reloader = new EntityViewReloader(entityStates, dataManager);
+        int result = 0;
+        for (Entity entity : detached) {
+            Entity source = loaded.get(entity.getId());
+            if (source != null) {
+                reloader.merge(source, entity, view);
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reloads entities with a view using one query per {@link EntityViewsConfig#getPrefetchBatchSize()} entities
+     * of the same class.
+     *
+     * @param entities Entities to be reloaded.
+     * @param view     CUBA view.
+     * @param <E>      Entity class.
+     * @return Reloaded entities by their IDs. Entities that are not found are missing in the map.
+     */
+    protected <E extends Entity> Map<Object, E> reloadAll(Collection<E> entities, View view) {
+        if (entities.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Class<?>, List<Object>> idsByClass = new LinkedHashMap<>();
+        for (E entity : entities) {
+            idsByClass.computeIfAbsent(entity.getClass(), c -> new ArrayList<>()).add(entity.getId());
+        }
+        int batchSize = getPrefetchBatchSize();
+        Map<Object, E> result = new HashMap<>(entities.size());
+        for (Map.Entry<Class<?>, List<Object>> entry : idsByClass.entrySet()) {
+            //noinspection unchecked
+            Class<E> entityClass = (Class<E>) entry.getKey();
+            List<Object> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Object> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                log.debug("Reloading {} instances of {} using view {}", batch.size(), entityClass, view);
+                LoadContext<E> context = LoadContext.create(entityClass)
+                        .setIds(new ArrayList<>(batch))
+                        .setView(view);
+                for (E loaded : dataManager.loadList(context)) {
+                    E origin = unwrap(loaded);
+                    result.put(origin.getId(), origin);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if an entity is loaded with all attributes of a view.
+     *
+     * @param entity Entity instance.
+     * @param view   CUBA view.
+     * @return True if the entity does not need to be reloaded.
+     */
+    boolean isLoadedWithView(Entity entity, View view) {
+        return entityStates.isLoadedWithView(entity, view);
+    }
+
+    boolean isLoaded(Entity entity, String propertyName) {
+        return entityStates.isLoaded(entity, propertyName);
+    }
+
+    @Nullable
+    Map<String, Object> getComputedValues(Entity entity) {
+        //Computed values are kept by the view-aware entity states only
+        return entityStates instanceof ViewsSupportEntityStates ? ((ViewsSupportEntityStates) entityStates).getComputedValues(entity) : null;
+    }
+
+    /**
+     * @return Number of entities reloaded by one query, see {@link EntityViewsConfig#getPrefetchBatchSize()}.
+     */
+    protected int getPrefetchBatchSize() {
+        return Math.max(1, entityViewsConfig.getPrefetchBatchSize());
+    }
+
+    ViewsConfiguration getViewsConfiguration() {
+        return viewsConfiguration;
+    }
+
+    private ViewsConfigurationBean.ViewInterfaceInfo getEffectiveViewInfo(Class<? extends BaseEntityView> viewInterface) {
+        ViewsConfigurationBean.ViewInterfaceInfo info = viewsConfiguration.getEffectiveViewDefinition(viewInterface);
+        log.trace("Effective view: {}", info.getViewInterface());
+        return info;
+    }
+
+    /**
+     * Entities loaded with the CUBA view of the effective entity view or with a view that covers it
+     * do not need to be checked.
+     */
+    private boolean isEffectiveView(ViewsConfigurationBean.ViewInterfaceInfo info, @Nullable View loadedView) {
+        return loadedView != null && viewsConfiguration.isViewCovered(loadedView, info.getView());
+    }
+
+    private <E extends Entity<K>, V extends BaseEntityView<E, K>, K> V createView(E entity,
+                                                                                   ViewsConfigurationBean.ViewInterfaceInfo info,
+                                                                                   EntityViewEngine engine,
+                                                                                   boolean loadedWithView) {
+        ViewInterfaceInvocationHandler<E, V, K> handler = new ViewInterfaceInvocationHandler<>(entity, info, loadedWithView, this);
+        return engine.newInstance(handler, handler.getViewInterface());
+    }
+}
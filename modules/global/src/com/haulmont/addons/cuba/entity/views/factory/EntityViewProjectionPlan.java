@@ -0,0 +1,372 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.Computed;
+import com.haulmont.addons.cuba.entity.views.scan.EntityViewProjection;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.Metadata;
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Describes how to load an entity view annotated with {@link EntityViewProjection} using a JPQL scalar projection:
+ * which attributes are selected, which references are joined and which getter reads which column. Entity views
+ * created from projection rows keep values in an array shared with nested entity views. Such entity views are
+ * serializable, values are serialized with them and origins are loaded by {@link DataManager} of the current tier.
+ *
+ * @param <V> Entity view interface class.
+ */
+public final class EntityViewProjectionPlan<V extends BaseEntityView> {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewProjectionPlan.class);
+
+    /**
+     * Matches <code>select e from Entity e ...</code> queries, the rest of a query may only contain joins,
+     * conditions and ordering.
+     */
+    private static final Pattern ENTITY_QUERY = Pattern.compile(
+            "^\\s*select\\s+(\\w+)\\s+from\\s+([\\w$.]+)\\s+(?:as\\s+)?(\\w+)((?:\\s+(?:where|order|join|left|inner)\\b.*)?)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final String COLUMN_PREFIX = "c";
+
+    private static final String JOIN_ALIAS_PREFIX = "evp";
+
+    private final String entityName;
+    private final Layout layout;
+    //Columns and joins reference aliases by index, 0 is the root entity alias
+    private final List<Column> columns;
+    private final List<Join> joins;
+
+    private EntityViewProjectionPlan(String entityName, Layout layout, List<Column> columns, List<Join> joins) {
+        this.entityName = entityName;
+        this.layout = layout;
+        this.columns = columns;
+        this.joins = joins;
+    }
+
+    /**
+     * Creates projection plan for an entity view.
+     *
+     * @param viewInfo           Entity view definition.
+     * @param viewsConfiguration Views configuration to resolve referenced entity views.
+     * @param metadata           Metadata.
+     * @param <V>                Entity view interface class.
+     * @return Projection plan or <code>null</code> if the entity view is not annotated with
+     * {@link EntityViewProjection} or cannot be loaded by a scalar projection.
+     */
+    @Nullable
+    public static <V extends BaseEntityView> EntityViewProjectionPlan<V> create(ViewsConfigurationBean.ViewInterfaceInfo viewInfo,
+                                                                               ViewsConfiguration viewsConfiguration,
+                                                                               Metadata metadata) {
+        if (!viewInfo.getViewInterface().isAnnotationPresent(EntityViewProjection.class)) {
+            return null;
+        }
+        List<Column> columns = new ArrayList<>();
+        List<Join> joins = new ArrayList<>();
+        Layout layout = createLayout(viewInfo, 0, viewsConfiguration, metadata, columns, joins);
+        if (layout == null) {
+            log.debug("Entity view {} cannot be loaded by a scalar projection", viewInfo.getViewInterface().getName());
+            return null;
+        }
+        String entityName = metadata.getClassNN(viewInfo.getEntityClass()).getName();
+        return new EntityViewProjectionPlan<>(entityName, layout, Collections.unmodifiableList(columns), Collections.unmodifiableList(joins));
+    }
+
+    @Nullable
+    private static Layout createLayout(ViewsConfigurationBean.ViewInterfaceInfo viewInfo, int alias,
+                                       ViewsConfiguration viewsConfiguration, Metadata metadata,
+                                       List<Column> columns, List<Join> joins) {
+        if (!viewInfo.getLazyViews().isEmpty()) {
+            return null;
+        }
+        MetaClass metaClass = metadata.getClassNN(viewInfo.getEntityClass());
+        String primaryKeyName = metadata.getTools().getPrimaryKeyName(metaClass);
+        if (primaryKeyName == null) {
+            return null;
+        }
+        Layout layout = new Layout(viewInfo.getViewInterface(), columns.size());
+        columns.add(new Column(alias, primaryKeyName, null));
+        layout.columns.put(primaryKeyName, layout.idColumn);
+
+        for (Method method : viewInfo.getViewInterface().getMethods()) {
+            String computed = method.isAnnotationPresent(Computed.class)
+                    ? viewInfo.getComputedExpressions().get(getPropertyName(method)) : null;
+            if (computed != null) {
+                //Computed values are selected with the row
+                layout.getters.put(method.getName(), columns.size());
+                layout.columns.put(getPropertyName(method), columns.size());
+                columns.add(new Column(alias, null, computed));
+                continue;
+            }
+            if (Modifier.isStatic(method.getModifiers()) || method.isDefault()
+                    || method.getDeclaringClass().isAssignableFrom(BaseEntityView.class)) {
+                continue;
+            }
+            String propertyName = getPropertyName(method);
+            MetaProperty metaProperty = propertyName != null ? metaClass.getProperty(propertyName) : null;
+            if (metaProperty == null || !metadata.getTools().isPersistent(metaProperty)) {
+                return null;
+            }
+            Class<?> returnType = method.getReturnType();
+            if (BaseEntityView.class.isAssignableFrom(returnType)) {
+                if (!metaProperty.getRange().isClass() || metaProperty.getRange().getCardinality().isMany()) {
+                    return null;
+                }
+                //noinspection unchecked
+                ViewsConfigurationBean.ViewInterfaceInfo refInfo =
+                        viewsConfiguration.getEffectiveViewDefinition((Class<? extends BaseEntityView>) returnType);
+                int refAlias = joins.size() + 1;
+                joins.add(new Join(alias, propertyName));
+                Layout refLayout = createLayout(refInfo, refAlias, viewsConfiguration, metadata, columns, joins);
+                if (refLayout == null) {
+                    return null;
+                }
+                layout.references.put(method.getName(), refLayout);
+            } else {
+                if (!metaProperty.getRange().isDatatype()
+                        || !ClassUtils.primitiveToWrapper(returnType).isAssignableFrom(ClassUtils.primitiveToWrapper(metaProperty.getJavaType()))) {
+                    return null;
+                }
+                Integer column = layout.columns.get(propertyName);
+                if (column == null) {
+                    column = columns.size();
+                    columns.add(new Column(alias, propertyName, null));
+                    layout.columns.put(propertyName, column);
+                }
+                layout.getters.put(method.getName(), column);
+            }
+        }
+        return layout;
+    }
+
+    @Nullable
+    private static String getPropertyName(Method method) {
+        if (method.getParameterCount() != 0 || method.getReturnType() == void.class) {
+            return null;
+        }
+        return EntityViewWrapper.getPropertyName(method);
+    }
+
+    /**
+     * Rewrites a query that selects entities into a query that selects attributes of the entity view.
+     *
+     * @param queryString JPQL query that selects entities, e.g. <code>select e from sales$Order e where ...</code>.
+     * @return Projection query or <code>null</code> if the query cannot be rewritten.
+     */
+    @Nullable
+    public String createQuery(String queryString) {
+        Matcher matcher = ENTITY_QUERY.matcher(queryString);
+        if (!matcher.matches() || !matcher.group(1).equals(matcher.group(3)) || !entityName.equals(matcher.group(2))) {
+            return null;
+        }
+        String rootAlias = matcher.group(1);
+        StringBuilder result = new StringBuilder("select ");
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            result.append(i == 0 ? "" : ", ");
+            if (column.expression != null) {
+                result.append(column.expression.replace(Computed.ENTITY_ALIAS, getAlias(column.alias, rootAlias)));
+            } else {
+                result.append(getAlias(column.alias, rootAlias)).append('.').append(column.property);
+            }
+        }
+        result.append(" from ").append(entityName).append(' ').append(rootAlias);
+        for (int i = 0; i < joins.size(); i++) {
+            Join join = joins.get(i);
+            result.append(" left join ").append(getAlias(join.parentAlias, rootAlias)).append('.').append(join.property)
+                    .append(' ').append(getAlias(i + 1, rootAlias));
+        }
+        return result.append(matcher.group(4)).toString();
+    }
+
+    private static String getAlias(int alias, String rootAlias) {
+        return alias == 0 ? rootAlias : JOIN_ALIAS_PREFIX + alias;
+    }
+
+    /**
+     * @return Names of values in rows loaded by the projection query, in the order of selected attributes.
+     */
+    public List<String> getValueNames() {
+        List<String> result = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            result.add(COLUMN_PREFIX + i);
+        }
+        return result;
+    }
+
+    /**
+     * Creates entity view backed by a projection row.
+     *
+     * @param row Row loaded by the projection query.
+     * @return Entity view.
+     */
+    public V wrap(KeyValueEntity row) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.getValue(COLUMN_PREFIX + i);
+        }
+        //noinspection unchecked
+        return (V) layout.newView(values);
+    }
+
+    private static final class Column {
+        private final int alias;
+        private final String property;
+        private final String expression;
+
+        private Column(int alias, @Nullable String property, @Nullable String expression) {
+            this.alias = alias;
+            this.property = property;
+            this.expression = expression;
+        }
+    }
+
+    private static final class Join {
+        private final int parentAlias;
+        private final String property;
+
+        private Join(int parentAlias, String property) {
+            this.parentAlias = parentAlias;
+            this.property = property;
+        }
+    }
+
+    /**
+     * Maps getters of one entity view interface to row columns. Getters have no parameters, so they are mapped
+     * by names and the layout is serialized with entity views.
+     */
+    private static final class Layout implements Serializable {
+
+        private static final long serialVersionUID = 6387015429120375472L;
+
+        private final Class<? extends BaseEntityView> viewInterface;
+        private final int idColumn;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private final Map<String, Integer> getters = new HashMap<>();
+        private final Map<String, Layout> references = new HashMap<>();
+
+        private Layout(Class<? extends BaseEntityView> viewInterface, int idColumn) {
+            this.viewInterface = viewInterface;
+            this.idColumn = idColumn;
+        }
+
+        private Object newView(Object[] values) {
+            return Proxy.newProxyInstance(viewInterface.getClassLoader(), new Class<?>[]{viewInterface},
+                    new ProjectionRow(this, values));
+        }
+    }
+
+    /**
+     * Invocation handler of an entity view backed by projection row values. Getters read values, methods that
+     * cannot be answered by the row are invoked on the origin entity loaded on demand.
+     * <br>
+     * The handler is serialized with its proxy together with the layout, the values and the origin if it is loaded.
+     */
+    private static final class ProjectionRow implements InvocationHandler, Serializable {
+
+        private static final long serialVersionUID = -1960373213581458924L;
+
+        private final Layout layout;
+        private final Object[] values;
+        private Entity origin;
+
+        private ProjectionRow(Layout layout, Object[] values) {
+            this.layout = layout;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean getter = args == null || args.length == 0;
+            Integer column = getter ? layout.getters.get(method.getName()) : null;
+            if (column != null) {
+                return values[column];
+            }
+            Layout reference = getter ? layout.references.get(method.getName()) : null;
+            if (reference != null) {
+                return values[reference.idColumn] == null ? null : reference.newView(values);
+            }
+            if (method.isDefault()) {
+                return DefaultMethodInvoker.forMethod(layout.viewInterface, method).invoke(proxy, args);
+            }
+            Object id = values[layout.idColumn];
+            switch (method.getName()) {
+                case "getId":
+                    return id;
+                case "getInterfaceClass":
+                    return layout.viewInterface;
+                case "getOrigin":
+                    return getOrigin();
+                case "reload":
+                    EntityViewFactory factory = AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class);
+                    //noinspection unchecked
+                    return factory.wrap(getOrigin(), (Class<BaseEntityView>) args[0]);
+                case "equals":
+                    return args[0] instanceof BaseEntityView
+                            && ((BaseEntityView) args[0]).getInterfaceClass() == layout.viewInterface
+                            && Objects.equals(id, ((BaseEntityView) args[0]).getId());
+                case "hashCode":
+                    return Objects.hashCode(id);
+                case "toString":
+                    return layout.viewInterface.getSimpleName() + "-" + id + " [projection]";
+                case "getValue":
+                    Integer valueColumn = args[0] instanceof String ? layout.columns.get(args[0]) : null;
+                    if (valueColumn != null) {
+                        return values[valueColumn];
+                    }
+                    break;
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(getOrigin(), args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Entity getOrigin() {
+            if (origin == null) {
+                log.debug("Loading origin of projected entity view {} with ID {}", layout.viewInterface.getName(), values[layout.idColumn]);
+                origin = Objects.requireNonNull(loadOrigin(layout.viewInterface, values[layout.idColumn]),
+                        () -> "Entity is not found by ID " + values[layout.idColumn]);
+            }
+            return origin;
+        }
+
+        @Nullable
+        private static Entity loadOrigin(Class<? extends BaseEntityView> viewInterface, Object id) {
+            ViewsConfigurationBean.ViewInterfaceInfo viewInfo = AppBeans.get(ViewsConfiguration.class).getViewInterfaceDefinition(viewInterface);
+            //noinspection unchecked
+            LoadContext<Entity> context = LoadContext.create((Class<Entity>) viewInfo.getEntityClass()).setId(id).setView(viewInfo.getView());
+            Entity loaded = AppBeans.get(DataManager.class).load(context);
+            return loaded == null ? null : AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class).unwrap(loaded);
+        }
+    }
+}
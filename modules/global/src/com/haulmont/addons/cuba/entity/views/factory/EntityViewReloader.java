@@ -0,0 +1,218 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.global.ViewsSupportEntityStates;
+import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.EntityStates;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewProperty;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.eclipse.persistence.internal.queries.EntityFetchGroup;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Loads attributes of a CUBA view that are missing in a detached entity. Only the difference between
+ * the attributes already loaded in the entity and the view is fetched, and the fetched values are merged into
+ * the existing instance (and instances it references). Attributes that are already loaded are never overwritten,
+ * so unsaved changes are kept.
+ * <br>
+ * Entities that are not detached or do not track fetched attributes are reloaded with the whole view
+ * as a new instance.
+ */
+class EntityViewReloader {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewReloader.class);
+
+    private final EntityStates entityStates;
+    private final DataManager dataManager;
+
+    EntityViewReloader(EntityStates entityStates, DataManager dataManager) {
+        this.entityStates = entityStates;
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Loads view attributes that are missing in the entity.
+     *
+     * @param entity Entity to be loaded.
+     * @param view   CUBA view.
+     * @param <E>    Entity class.
+     * @return The same entity with merged attributes or a reloaded instance if partial reload is not possible.
+     */
+    <E extends Entity> E reload(E entity, View view) {
+        if (!(entity instanceof FetchGroupTracker) || !entityStates.isDetached(entity)) {
+            return dataManager.reload(entity, view);
+        }
+        View missingView = getMissingView(entity, view);
+        if (missingView == null) {
+            log.trace("Entity {} already has all attributes of view {}", entity, view);
+            return entity;
+        }
+        log.trace("Loading attributes {} missing in entity {}", missingView, entity);
+        E loaded = dataManager.reload(entity, missingView);
+        if (loaded instanceof BaseEntityView) {
+            //noinspection unchecked
+            loaded = (E) ((BaseEntityView) loaded).getOrigin();
+        }
+        merge(loaded, entity, missingView);
+        if (entityStates instanceof ViewsSupportEntityStates) {
+            ((ViewsSupportEntityStates) entityStates).setLoadedWithView(entity, view);
+        }
+        return entity;
+    }
+
+    /**
+     * Builds a view that contains only attributes that are not loaded in the entity or in the entities it
+     * references.
+     *
+     * @param entity Entity instance.
+     * @param view   Required CUBA view.
+     * @return View of missing attributes, <code>null</code> if nothing is missing.
+     */
+    @Nullable
+    View getMissingView(Entity entity, View view) {
+        View result = null;
+        for (ViewProperty property : view.getProperties()) {
+            String name = property.getName();
+            View propertyView = property.getView();
+            View missingPropertyView;
+            if (!entityStates.isLoaded(entity, name)) {
+                missingPropertyView = propertyView;
+            } else if (propertyView == null) {
+                continue;
+            } else {
+                Object value = entity.getValue(name);
+                if (value instanceof Entity) {
+                    missingPropertyView = getMissingView((Entity) value, propertyView);
+                    if (missingPropertyView == null) {
+                        continue;
+                    }
+                } else if (value instanceof Collection && !isLoadedWithView((Collection<?>) value, propertyView)) {
+                    missingPropertyView = propertyView;
+                } else {
+                    continue;
+                }
+            }
+            if (result == null) {
+                result = new View(view.getEntityClass(), false).setLoadPartialEntities(true);
+            }
+            result.addProperty(name, missingPropertyView, property.getFetchMode());
+        }
+        return result;
+    }
+
+    private boolean isLoadedWithView(Collection<?> entities, View view) {
+        for (Object entity : entities) {
+            if (entity instanceof Entity && !entityStates.isLoadedWithView((Entity) entity, view)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies view attributes that are not loaded in the target entity from the source one. Loaded references
+     * and collection elements are merged recursively if the source contains the same instances.
+     *
+     * @param source Entity loaded with the view.
+     * @param target Entity to merge attributes into.
+     * @param view   View of missing attributes.
+     */
+    void merge(Entity source, Entity target, View view) {
+        List<String> missing = new ArrayList<>();
+        for (ViewProperty property : view.getProperties()) {
+            String name = property.getName();
+            if (!entityStates.isLoaded(source, name)) {
+                continue;
+            }
+            if (!entityStates.isLoaded(target, name)) {
+                missing.add(name);
+            } else if (property.getView() != null) {
+                mergeValue(source.getValue(name), target.getValue(name), property.getView());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        markFetched(target, missing);
+        for (String name : missing) {
+            copyValue(source, target, name);
+        }
+    }
+
+    private void mergeValue(Object sourceValue, Object targetValue, View view) {
+        if (sourceValue instanceof Entity && targetValue instanceof Entity) {
+            if (Objects.equals(((Entity) sourceValue).getId(), ((Entity) targetValue).getId())) {
+                merge((Entity) sourceValue, (Entity) targetValue, view);
+            }
+        } else if (sourceValue instanceof Collection && targetValue instanceof Collection) {
+            Map<Object, Entity> sourceById = new HashMap<>();
+            for (Object element : (Collection<?>) sourceValue) {
+                if (element instanceof Entity) {
+                    sourceById.put(((Entity) element).getId(), (Entity) element);
+                }
+            }
+            for (Object element : (Collection<?>) targetValue) {
+                if (element instanceof Entity) {
+                    Entity sourceElement = sourceById.get(((Entity) element).getId());
+                    if (sourceElement != null) {
+                        merge(sourceElement, (Entity) element, view);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds attributes to the fetch group of the entity, so they are treated as loaded.
+     */
+    private void markFetched(Entity entity, Collection<String> attributes) {
+        FetchGroupTracker tracker = (FetchGroupTracker) entity;
+        FetchGroup fetchGroup = tracker._persistence_getFetchGroup();
+        if (fetchGroup == null) {
+            return;
+        }
+        Set<String> attributeNames = new HashSet<>(fetchGroup.getAttributeNames());
+        attributeNames.addAll(attributes);
+        FetchGroup merged;
+        try {
+            //CUBA uses its own fetch group class that reports access to unfetched attributes
+            merged = fetchGroup.getClass().getConstructor(Collection.class).newInstance(attributeNames);
+        } catch (ReflectiveOperationException e) {
+            merged = new EntityFetchGroup(attributeNames);
+        }
+        tracker._persistence_setFetchGroup(merged);
+    }
+
+    /**
+     * Copies attribute value bypassing setters, so the entity is not marked as changed. Lazy attributes
+     * are stored in value holders that are copied as well.
+     */
+    private void copyValue(Entity source, Entity target, String name) {
+        BaseEntityInternalAccess.setValue(target, name, source.getValue(name));
+        Field valueHolder = FieldUtils.getField(target.getClass(), "_persistence_" + name + "_vh", true);
+        if (valueHolder != null) {
+            try {
+                FieldUtils.writeField(valueHolder, target, FieldUtils.readField(valueHolder, source, true), true);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(String.format("Cannot copy attribute %s of %s", name, target), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.cuba.core.entity.Entity;
+
+import javax.annotation.Nullable;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Superclass for entity view implementations generated by {@link EntityViewClassGenerator}. Generated subclasses
+ * implement an entity view interface and call entity accessors directly, all other methods are delegated to
+ * {@link ViewInterfaceInvocationHandler} exactly like {@link java.lang.reflect.Proxy} does.
+ * <br>
+ * This class is public only because generated classes are defined in their own class loader, it is not a part of API.
+ */
+public abstract class GeneratedEntityView implements Serializable {
+
+    private static final long serialVersionUID = 4190536371523718475L;
+
+    private static final Method EQUALS_METHOD;
+    private static final Method HASH_CODE_METHOD;
+    private static final Method TO_STRING_METHOD;
+
+    static {
+        try {
+            EQUALS_METHOD = Object.class.getMethod("equals", Object.class);
+            HASH_CODE_METHOD = Object.class.getMethod("hashCode");
+            TO_STRING_METHOD = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ViewInterfaceInvocationHandler handler;
+
+    protected GeneratedEntityView(Object handler) {
+        this.handler = (ViewInterfaceInvocationHandler) handler;
+    }
+
+    /**
+     * @return Entity to be used for property access, reloaded with the view if needed.
+     */
+    protected final Entity loadedEntity() {
+        return handler.getLoadedEntity();
+    }
+
+    /**
+     * @return Underlying entity without reloading it.
+     */
+    protected final Entity entity() {
+        return handler.getEntity();
+    }
+
+    final ViewInterfaceInvocationHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Delegates method invocation to the invocation handler.
+     *
+     * @param method Entity view interface method.
+     * @param args   Method arguments, <code>null</code> for methods without parameters.
+     * @return Invocation result.
+     */
+    protected final Object dispatch(Method method, Object[] args) {
+        return handler.dispatch(this, method, args);
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        return (Boolean) dispatch(EQUALS_METHOD, new Object[]{obj});
+    }
+
+    @Override
+    public final int hashCode() {
+        return (Integer) dispatch(HASH_CODE_METHOD, null);
+    }
+
+    @Override
+    public final String toString() {
+        return (String) dispatch(TO_STRING_METHOD, null);
+    }
+
+    /**
+     * Generated classes exist only in the current JVM, so the view is serialized as an entity and view interface pair
+     * together with computed values and wrapped again after deserialization.
+     *
+     * @return Serializable replacement.
+     * @throws ObjectStreamException never.
+     */
+    protected final Object writeReplace() throws ObjectStreamException {
+        //noinspection unchecked
+        return new SerializedView(handler.getEntity(), handler.getViewInterface(), handler.getComputedValues());
+    }
+
+    private static class SerializedView implements Serializable {
+
+        private static final long serialVersionUID = -3178620441389375810L;
+
+        private final Entity entity;
+        private final Class<? extends BaseEntityView> viewInterface;
+        private final Map<String, Object> computedValues;
+
+        SerializedView(Entity entity, Class<? extends BaseEntityView> viewInterface, @Nullable Map<String, Object> computedValues) {
+            this.entity = entity;
+            this.viewInterface = viewInterface;
+            this.computedValues = computedValues == null ? null : new HashMap<>(computedValues);
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            //noinspection unchecked
+            Object view = EntityViewWrapper.wrap(entity, (Class) viewInterface);
+            if (computedValues != null) {
+                ViewInterfaceInvocationHandler.setComputedValues(view, computedValues);
+            }
+            return view;
+        }
+    }
+}
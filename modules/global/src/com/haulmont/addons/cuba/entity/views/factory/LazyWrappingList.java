@@ -0,0 +1,149 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.View;
+
+import javax.annotation.Nullable;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Random access list of entity views backed by a list of entities that were loaded with a CUBA view covering
+ * the entity view. An element is wrapped on its first access and kept in an array of the same size
+ * as the backing list, so reading <code>size()</code> or a page of results does not create entity views
+ * for the rest of the elements.
+ * <br>
+ * Unlike {@link WrappingList}, entities are never reloaded in batches, so the list should be used only if
+ * the entities do not miss attributes of the entity view.
+ * <br>
+ * The list is serialized as an {@link ArrayList} of wrapped entity views.
+ *
+ * @param <E> entity type.
+ * @param <V> entity view type.
+ */
+public class LazyWrappingList<E extends Entity<K>, V extends BaseEntityView<E, K>, K> extends AbstractList<V> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 2815720947360147893L;
+
+    private final List<E> delegate;
+
+    private final Class<V> entityView;
+
+    private final transient EntityViewFactory entityViewFactory;
+
+    private final transient View loadedView;
+
+    private transient Object[] views;
+
+    /**
+     * Creates list of entities that were loaded with a CUBA view.
+     *
+     * @param delegate          Entities, should support random access.
+     * @param entityView        Entity view interface of elements.
+     * @param entityViewFactory Factory that wraps elements.
+     * @param loadedView        CUBA view the entities are loaded with.
+     * @see EntityViewFactory#wrapLoaded(Entity, Class, View)
+     */
+    public LazyWrappingList(List<E> delegate, Class<V> entityView, EntityViewFactory entityViewFactory, @Nullable View loadedView) {
+        this.delegate = delegate;
+        this.entityView = entityView;
+        this.entityViewFactory = entityViewFactory;
+        this.loadedView = loadedView;
+        this.views = new Object[delegate.size()];
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public V get(int index) {
+        E entity = delegate.get(index);
+        //noinspection unchecked
+        V result = (V) views[index];
+        if (result == null && entity != null) {
+            result = entityViewFactory.wrapLoaded(entity, entityView, loadedView);
+            //Lazy properties are loaded for all elements of the list at once
+            ViewInterfaceInvocationHandler.setLazyGroup(result, delegate);
+            views[index] = result;
+        }
+        return result;
+    }
+
+    @Override
+    public V set(int index, V element) {
+        V previous = get(index);
+        delegate.set(index, unwrap(element));
+        views[index] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, V element) {
+        int size = delegate.size();
+        delegate.add(index, unwrap(element));
+        if (views.length <= size) {
+            views = Arrays.copyOf(views, Math.max(size + 1, size + (size >> 1)));
+        }
+        System.arraycopy(views, index, views, index + 1, size - index);
+        views[index] = element;
+        modCount++;
+    }
+
+    @Override
+    public V remove(int index) {
+        V previous = get(index);
+        delegate.remove(index);
+        int size = delegate.size();
+        System.arraycopy(views, index + 1, views, index, size - index);
+        views[size] = null;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        views = new Object[0];
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o == null || o instanceof BaseEntityView ? delegate.indexOf(unwrap(o)) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return o == null || o instanceof BaseEntityView ? delegate.lastIndexOf(unwrap(o)) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * The factory and the loaded view cannot be serialized, so all elements are wrapped and the list is replaced
+     * by a plain list of entity views.
+     *
+     * @return Serializable replacement.
+     * @throws ObjectStreamException never.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return new ArrayList<>(this);
+    }
+
+    @Nullable
+    private E unwrap(@Nullable Object element) {
+        //noinspection unchecked
+        return element == null ? null : (E) ((BaseEntityView) element).getOrigin();
+    }
+}
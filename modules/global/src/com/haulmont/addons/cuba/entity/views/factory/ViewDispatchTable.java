@@ -0,0 +1,316 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.Computed;
+import com.haulmont.addons.cuba.entity.views.scan.LazyProperty;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.cuba.core.entity.Entity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table that maps every entity view interface method to a way of its invocation. The table is built
+ * once per entity view interface and entity class when views are registered, so an entity view method call
+ * requires a single map lookup instead of searching for a delegate method on every invocation.
+ *
+ * @see ViewInterfaceInvocationHandler
+ */
+public final class ViewDispatchTable {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewDispatchTable.class);
+
+    /**
+     * Method invocation kinds.
+     */
+    enum Kind {
+        /**
+         * {@link BaseEntityView#getOrigin()}.
+         */
+        ORIGIN,
+        /**
+         * {@link BaseEntityView#getInterfaceClass()}.
+         */
+        INTERFACE_CLASS,
+        /**
+         * {@link BaseEntityView#reload(Class)}.
+         */
+        RELOAD,
+        /**
+         * Methods inherited from {@link Entity} contract, invoked on the entity without reloading it.
+         */
+        ENTITY_CONTRACT,
+        /**
+         * Entity method which result is returned as is.
+         */
+        GETTER,
+        /**
+         * Entity method which result should be wrapped into entity view or wrapping collection.
+         */
+        WRAPPING_GETTER,
+        /**
+         * Setter that accepts entity view, underlying entity is passed to the entity's setter.
+         */
+        VIEW_SETTER,
+        /**
+         * Getter evaluated by a JPQL expression, see {@link com.haulmont.addons.cuba.entity.views.scan.Computed}.
+         */
+        COMPUTED,
+        /**
+         * Default interface method.
+         */
+        DEFAULT_METHOD,
+        /**
+         * Method that cannot be resolved using the declared entity class, e.g. it is defined in an entity
+         * subclass only. Such methods are resolved on every invocation.
+         */
+        UNRESOLVED
+    }
+
+    /**
+     * Describes how to invoke an entity view method.
+     */
+    static final class Entry {
+
+        private final Kind kind;
+        private final Method viewMethod;
+        private final Method targetMethod;
+        private final Class<?> returnViewType;
+        private final EntityMethodAccessor accessor;
+        private final String propertyName;
+        private final boolean lazy;
+
+        Entry(Kind kind, Method viewMethod, Method targetMethod) {
+            this(kind, viewMethod, targetMethod, viewMethod.isAnnotationPresent(LazyProperty.class));
+        }
+
+        Entry(Kind kind, Method viewMethod, Method targetMethod, boolean lazy) {
+            this.kind = kind;
+            this.viewMethod = viewMethod;
+            this.targetMethod = targetMethod;
+            this.returnViewType = kind == Kind.WRAPPING_GETTER ? EntityViewWrapper.getReturnViewType(viewMethod) : null;
+            this.accessor = targetMethod != null && isEntityInvocation(kind) ? EntityMethodAccessor.forMethod(targetMethod) : null;
+            this.lazy = (kind == Kind.GETTER || kind == Kind.WRAPPING_GETTER) && lazy;
+            this.propertyName = kind == Kind.WRAPPING_GETTER || kind == Kind.VIEW_SETTER || kind == Kind.COMPUTED || this.lazy
+                    ? getPropertyName(viewMethod) : null;
+        }
+
+        private static String getPropertyName(Method method) {
+            String propertyName = EntityViewWrapper.getPropertyName(method);
+            return propertyName != null ? propertyName : method.getName();
+        }
+
+        private static boolean isEntityInvocation(Kind kind) {
+            return kind == Kind.ENTITY_CONTRACT || kind == Kind.GETTER || kind == Kind.WRAPPING_GETTER || kind == Kind.VIEW_SETTER;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        Method getViewMethod() {
+            return viewMethod;
+        }
+
+        /**
+         * @return Entity or interface method to be invoked, may be <code>null</code> for {@link Kind#VIEW_SETTER}
+         * if entity setter cannot be found by the declared entity class.
+         */
+        Method getTargetMethod() {
+            return targetMethod;
+        }
+
+        /**
+         * @return Type returned by the view method, collection element type for collections.
+         * Resolved for {@link Kind#WRAPPING_GETTER} only.
+         */
+        Class<?> getReturnViewType() {
+            return returnViewType;
+        }
+
+        /**
+         * @return Cached accessor of the target entity method, <code>null</code> if the method is not invoked
+         * on the entity.
+         */
+        EntityMethodAccessor getAccessor() {
+            return accessor;
+        }
+
+        /**
+         * @return Name of the property read by {@link Kind#WRAPPING_GETTER}, {@link Kind#COMPUTED} or a lazy getter,
+         * or written by {@link Kind#VIEW_SETTER}, <code>null</code> for other kinds.
+         */
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        /**
+         * @return True if the getter reads a property that is not loaded with the entity view.
+         * @see LazyProperty
+         * @see com.haulmont.addons.cuba.entity.views.scan.SplitQuery
+         */
+        boolean isLazy() {
+            return lazy;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + viewMethod.getName() + " -> " + targetMethod;
+        }
+    }
+
+    private final Map<Method, Entry> entries;
+
+    private ViewDispatchTable(Map<Method, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Returns method invocation description.
+     *
+     * @param method Entity view interface method.
+     * @return Table entry or <code>null</code> if the method does not belong to the entity view interface.
+     */
+    Entry get(Method method) {
+        return entries.get(method);
+    }
+
+    /**
+     * @return All table entries.
+     */
+    Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * Builds dispatch table for an entity view interface.
+     *
+     * @param viewInterface Entity view interface.
+     * @param entityClass   Entity class declared by entity view interface.
+     * @return Dispatch table.
+     */
+    public static ViewDispatchTable build(Class<? extends BaseEntityView> viewInterface, Class<? extends Entity> entityClass) {
+        log.trace("Building dispatch table for {}", viewInterface);
+        Map<Method, Entry> entries = new HashMap<>();
+        for (Method method : viewInterface.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                entries.put(method, createEntry(method, viewInterface, entityClass));
+            }
+        }
+        for (Method method : Object.class.getMethods()) {
+            if (isProxiedObjectMethod(method)) {
+                entries.put(method, createEntry(method, viewInterface, entityClass));
+            }
+        }
+        log.trace("Dispatch table for {}: {}", viewInterface, entries.values());
+        return new ViewDispatchTable(Collections.unmodifiableMap(entries));
+    }
+
+    /**
+     * {@link java.lang.reflect.Proxy} passes these {@link Object} methods to the invocation handler.
+     */
+    private static boolean isProxiedObjectMethod(Method method) {
+        String name = method.getName();
+        return "equals".equals(name) || "hashCode".equals(name) || "toString".equals(name);
+    }
+
+    private static Entry createEntry(Method method, Class<? extends BaseEntityView> viewInterface, Class<? extends Entity> entityClass) {
+        Method baseEntityViewMethod = ViewInterfaceInvocationHandler.getDelegateMethodCandidate(method, BaseEntityView.class);
+        if (baseEntityViewMethod != null) {
+            switch (method.getName()) {
+                case "getOrigin":
+                    return new Entry(Kind.ORIGIN, method, baseEntityViewMethod);
+                case "getInterfaceClass":
+                    return new Entry(Kind.INTERFACE_CLASS, method, baseEntityViewMethod);
+                case "reload":
+                    return new Entry(Kind.RELOAD, method, baseEntityViewMethod);
+                default:
+                    return new Entry(Kind.ENTITY_CONTRACT, method, baseEntityViewMethod);
+            }
+        }
+
+        if (method.isAnnotationPresent(Computed.class)) {
+            return new Entry(Kind.COMPUTED, method, method.isDefault() ? method : null);
+        }
+
+        if (isSetterWithView(method)) {
+            return new Entry(Kind.VIEW_SETTER, method, findViewSetterTarget(method, entityClass));
+        }
+
+        Method entityMethod = ViewInterfaceInvocationHandler.getDelegateMethodCandidate(method, entityClass);
+        if (entityMethod != null) {
+            //Split collections are loaded on demand as lazy properties if they were not loaded by the data manager
+            boolean lazy = method.isAnnotationPresent(LazyProperty.class) || ViewsConfigurationBean.isSplitQuery(viewInterface, method);
+            return new Entry(needsWrapping(method, entityMethod) ? Kind.WRAPPING_GETTER : Kind.GETTER, method, entityMethod, lazy);
+        }
+
+        if (method.isDefault()) {
+            return new Entry(Kind.DEFAULT_METHOD, method, method);
+        }
+
+        log.debug("Method {} cannot be resolved in entity class {}, it will be resolved on invocation", method, entityClass);
+        return new Entry(Kind.UNRESOLVED, method, null);
+    }
+
+    /**
+     * Checks if a method is setter method that has only one parameter of a type BaseEntityView.
+     *
+     * @param method Method to be verified.
+     * @return True if is's a proper setter.
+     */
+    private static boolean isSetterWithView(Method method) {
+        return method.getReturnType().equals(Void.TYPE)
+                && method.getName().startsWith("set")
+                && (method.getParameterCount() == 1)
+                && BaseEntityView.class.isAssignableFrom(method.getParameterTypes()[0]);
+    }
+
+    /**
+     * Finds entity setter that accepts an entity wrapped into entity view.
+     *
+     * @param method      View setter.
+     * @param entityClass Entity class.
+     * @return Entity setter or <code>null</code> if there is no single matching setter.
+     */
+    private static Method findViewSetterTarget(Method method, Class<? extends Entity> entityClass) {
+        Method result = null;
+        for (Method candidate : entityClass.getMethods()) {
+            if (candidate.getName().equals(method.getName())
+                    && candidate.getParameterCount() == 1
+                    && Entity.class.isAssignableFrom(candidate.getParameterTypes()[0])) {
+                if (result != null) {
+                    return null;
+                }
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if an entity method result may need to be wrapped into entity view or wrapping list.
+     */
+    private static boolean needsWrapping(Method viewMethod, Method entityMethod) {
+        return ViewInterfaceInvocationHandler.isWrappable(viewMethod, entityMethod)
+                || isWrappableResultType(entityMethod.getReturnType());
+    }
+
+    /**
+     * Checks if a method returning the type may return a collection that is wrapped into a wrapping list, set
+     * or collection. Results of default methods of such types are wrapped by the invocation handler as well.
+     *
+     * @param returnType Method return type.
+     * @return True if the result may need wrapping.
+     */
+    static boolean isWrappableResultType(Class<?> returnType) {
+        return !returnType.isPrimitive()
+                && (Collection.class.isAssignableFrom(returnType) || returnType.isAssignableFrom(List.class));
+    }
+}
@@ -0,0 +1,582 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewProperty;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Handler that process all invocations of a entity view's methods. It is used directly by
+ * {@link java.lang.reflect.Proxy} instances and as a fallback for methods that generated
+ * view classes cannot delegate to an entity directly.
+ *
+ * @param <E> Underlying entity's class.
+ * @param <V> Entity View interface class.
+ * @see EntityViewEngine
+ */
+class ViewInterfaceInvocationHandler<E extends Entity<K>, V extends BaseEntityView<E, K>, K> implements InvocationHandler, Serializable {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewInterfaceInvocationHandler.class);
+
+    private E entity;
+    private boolean loadStateChecked;
+    private boolean needReload;
+    private final Class<V> viewInterface;
+    //Reference properties set through view setters, their values are not known to be loaded with the property views
+    private Set<String> assignedProperties;
+    //Values of computed getters are kept with the view, so they survive serialization and entity replacement
+    private Map<String, Object> computedValues;
+    //View definition is shared by all views of the interface and is resolved again after deserialization
+    private transient ViewsConfigurationBean.ViewInterfaceInfo info;
+    private transient EntityViewFactoryBean factory;
+    //Wrapped results of reference and collection getters, created on the first read
+    private transient Map<ViewDispatchTable.Entry, WrappedResult> wrappedResults;
+    //Entities whose lazy properties are loaded together with the ones of this entity, e.g. elements of the same list
+    private transient Collection<? extends Entity> lazyGroup;
+
+    /**
+     * Creates handler for an entity.
+     *
+     * @param entity         Entity to be wrapped.
+     * @param info           Effective entity view interface definition.
+     * @param loadedWithView True if the entity is known to be loaded with the view. Otherwise it is checked
+     *                       on the first property access and reloaded if needed.
+     * @param factory        Factory that creates the view.
+     */
+    ViewInterfaceInvocationHandler(E entity, ViewsConfigurationBean.ViewInterfaceInfo info, boolean loadedWithView, EntityViewFactoryBean factory) {
+        this.entity = entity;
+        //noinspection unchecked
+        this.viewInterface = (Class<V>) info.getViewInterface();
+        this.info = info;
+        this.loadStateChecked = loadedWithView;
+        this.factory = factory;
+        if (!info.getComputedExpressions().isEmpty()) {
+            storeComputedValues(factory.getComputedValues(entity));
+        }
+    }
+
+    /**
+     * @see InvocationHandler#invoke(Object, Method, Object[])
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        ViewDispatchTable.Entry entry = getDispatchTable().get(method);
+        if (entry == null) {
+            return invokeUnresolved(proxy, method, args);
+        }
+        switch (entry.getKind()) {
+            case ORIGIN:
+                return entity;
+            case INTERFACE_CLASS:
+                return viewInterface;
+            case RELOAD:
+                //noinspection unchecked
+                return reload((Class) args[0], proxy);
+            case ENTITY_CONTRACT:
+                return entry.getAccessor().invoke(entity, args);
+            case GETTER:
+                reloadIfNeeded();
+                if (entry.isLazy()) {
+                    loadLazyProperty(entry.getPropertyName());
+                }
+                return entry.getAccessor().invoke(entity, args);
+            case WRAPPING_GETTER:
+                reloadIfNeeded();
+                if (entry.isLazy()) {
+                    loadLazyProperty(entry.getPropertyName());
+                }
+                return invokeWrappingGetter(entry, args);
+            case VIEW_SETTER:
+                reloadIfNeeded();
+                invalidateWrappedResult(entry.getPropertyName());
+                //The new reference may miss attributes of the view, so its entity view checks itself on the next access
+                if (assignedProperties == null) {
+                    assignedProperties = new HashSet<>(4);
+                }
+                assignedProperties.add(entry.getPropertyName());
+                return invokeViewSetter(method, entry.getAccessor(), (BaseEntityView) args[0]);
+            case COMPUTED:
+                return invokeComputed(proxy, entry, args);
+            case DEFAULT_METHOD:
+                reloadIfNeeded();
+                return executeDefaultMethod(proxy, method, args);
+            default:
+                return invokeUnresolved(proxy, method, args);
+        }
+    }
+
+    /**
+     * Resolves a method that is missing in the dispatch table against the actual entity class.
+     *
+     * @param proxy  Entity view interface instance.
+     * @param method Method to be invoked.
+     * @param args   Method's arguments.
+     * @return Method invocation result.
+     */
+    private Object invokeUnresolved(Object proxy, Method method, Object[] args) throws Throwable {
+        //Check if we should execute base interface method
+        Method baseEntityViewMethod = getDelegateMethodCandidate(method, BaseEntityView.class);
+        if (baseEntityViewMethod != null) {
+            return executeBaseEntityMethod(proxy, args, baseEntityViewMethod);
+        }
+
+        //We need to reload entity only in case we need to call its properties
+        reloadIfNeeded();
+        //Results of getters or another methods will be wrapped
+        Method entityMethod = getDelegateMethodCandidate(method, entity.getClass());
+        if (entityMethod != null) {
+            return executeEntityMethod(method, args, entityMethod);
+        }
+
+        //It is an interface default method - should be executed
+        return executeDefaultMethod(proxy, method, args);
+    }
+
+    /**
+     * Invokes entity getter and wraps its result. Wrapped results of getters without parameters are cached,
+     * so repeated reads return the same entity view or wrapping list as long as the entity returns the same
+     * value. The cache entry is dropped when the value is changed through the view setter, a value changed
+     * directly in the origin entity is detected by comparing it with the cached one.
+     *
+     * @param entry Dispatch table entry of the getter.
+     * @param args  Method's arguments.
+     * @return Wrapped result.
+     */
+    private Object invokeWrappingGetter(ViewDispatchTable.Entry entry, Object[] args) throws Throwable {
+        Method method = entry.getViewMethod();
+        log.trace("Invoking method {} from Entity class: {} name: {}", method.getName(), entity.getClass(), entity);
+        Object result = entry.getAccessor().invoke(entity, args);
+        if (result == null || (args != null && args.length > 0)) {
+            return wrapResult(method, entry.getTargetMethod(), result, entry.getReturnViewType(), null);
+        }
+        WrappedResult wrapped = wrappedResults == null ? null : wrappedResults.get(entry);
+        if (wrapped != null && wrapped.source == result) {
+            return wrapped.wrapper;
+        }
+        //A value replaced directly in the origin entity or set through the view may not be loaded with the property view
+        boolean assigned = assignedProperties != null && assignedProperties.contains(entry.getPropertyName());
+        Object wrapper = wrapResult(method, entry.getTargetMethod(), result, entry.getReturnViewType(),
+                wrapped == null && !assigned ? getLoadedView(entry.getPropertyName()) : null);
+        if (wrappedResults == null) {
+            wrappedResults = new HashMap<>(4);
+        }
+        wrappedResults.put(entry, new WrappedResult(result, wrapper));
+        return wrapper;
+    }
+
+    /**
+     * Drops cached wrapped results of a property.
+     *
+     * @param propertyName Property name.
+     */
+    private void invalidateWrappedResult(String propertyName) {
+        if (wrappedResults != null) {
+            wrappedResults.keySet().removeIf(e -> e.getPropertyName().equals(propertyName));
+        }
+    }
+
+    /**
+     * Returns the value of a computed getter loaded with the entity. If the value is not loaded, the default method
+     * body is executed, abstract getters return <code>null</code>.
+     *
+     * @param proxy Entity view interface instance.
+     * @param entry Dispatch table entry of the computed getter.
+     * @param args  Method's arguments.
+     * @return Computed value.
+     * @see com.haulmont.addons.cuba.entity.views.scan.Computed
+     */
+    private Object invokeComputed(Object proxy, ViewDispatchTable.Entry entry, Object[] args) throws Throwable {
+        if (computedValues == null) {
+            //Values may be loaded after the view is created
+            storeComputedValues(getFactory().getComputedValues(entity));
+        }
+        if (computedValues != null && computedValues.containsKey(entry.getPropertyName())) {
+            return computedValues.get(entry.getPropertyName());
+        }
+        if (entry.getViewMethod().isDefault()) {
+            reloadIfNeeded();
+            return executeDefaultMethod(proxy, entry.getViewMethod(), args);
+        }
+        log.trace("Computed property {} is not loaded for entity {}", entry.getPropertyName(), entity);
+        return null;
+    }
+
+    /**
+     * Loads a lazy property if it is not loaded in the entity yet.
+     *
+     * @param propertyName Property name.
+     * @see com.haulmont.addons.cuba.entity.views.scan.LazyProperty
+     */
+    private void loadLazyProperty(String propertyName) {
+        View lazyView = getInfo().getLazyViews().get(propertyName);
+        if (lazyView == null || getFactory().isLoaded(entity, propertyName)) {
+            return;
+        }
+        log.trace("Loading lazy property {} of entity {}", propertyName, entity);
+        E loaded = getFactory().loadLazyProperty(entity, lazyView, propertyName, lazyGroup);
+        if (loaded != entity) {
+            entity = loaded;
+            wrappedResults = null;
+        }
+    }
+
+    /**
+     * Sets entities whose lazy properties should be loaded together with the ones of the view's entity.
+     *
+     * @param view  Entity view.
+     * @param group Entities, e.g. elements of a list the view belongs to.
+     */
+    static void setLazyGroup(Object view, Collection<? extends Entity> group) {
+        ViewInterfaceInvocationHandler<?, ?, ?> handler = getHandler(view);
+        if (handler != null && !handler.getInfo().getLazyViews().isEmpty()) {
+            handler.lazyGroup = group;
+        }
+    }
+
+    /**
+     * Sets values of computed getters of an entity view, e.g. after deserialization of a generated entity view.
+     *
+     * @param view   Entity view.
+     * @param values Values by property names.
+     */
+    static void setComputedValues(Object view, Map<String, Object> values) {
+        ViewInterfaceInvocationHandler<?, ?, ?> handler = getHandler(view);
+        if (handler != null) {
+            handler.storeComputedValues(values);
+        }
+    }
+
+    @Nullable
+    private static ViewInterfaceInvocationHandler<?, ?, ?> getHandler(Object view) {
+        if (view instanceof GeneratedEntityView) {
+            return ((GeneratedEntityView) view).getHandler();
+        }
+        if (view != null && Proxy.isProxyClass(view.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(view);
+            return handler instanceof ViewInterfaceInvocationHandler ? (ViewInterfaceInvocationHandler<?, ?, ?>) handler : null;
+        }
+        return null;
+    }
+
+    /**
+     * Passes an entity wrapped into entity view to the entity setter.
+     *
+     * @param method   View setter.
+     * @param accessor Entity setter accessor found by the declared entity class, may be <code>null</code>.
+     * @param value    Entity view to be set.
+     * @return Setter invocation result.
+     */
+    private Object invokeViewSetter(Method method, EntityMethodAccessor accessor, BaseEntityView value) throws Throwable {
+        Entity origin = value == null ? null : value.getOrigin();
+        if (accessor == null) {
+            Method entityMethod = MethodUtils.getMatchingAccessibleMethod(entity.getClass(), method.getName(),
+                    origin == null ? method.getParameterTypes() : new Class<?>[]{origin.getClass()});
+            if (entityMethod == null) {
+                throw new NoSuchMethodException(String.format("No such accessible method: %s() on object: %s",
+                        method.getName(), entity.getClass().getName()));
+            }
+            accessor = EntityMethodAccessor.forMethod(entityMethod);
+        }
+        return accessor.invoke(entity, new Object[]{origin});
+    }
+
+    private ViewDispatchTable getDispatchTable() {
+        return getInfo().getDispatchTable();
+    }
+
+    private ViewsConfigurationBean.ViewInterfaceInfo getInfo() {
+        if (info == null) {
+            info = getFactory().getViewsConfiguration().getViewInterfaceDefinition(viewInterface);
+        }
+        return info;
+    }
+
+    private EntityViewFactoryBean getFactory() {
+        if (factory == null) {
+            //Factory is not serialized with the handler
+            factory = (EntityViewFactoryBean) AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class);
+        }
+        return factory;
+    }
+
+    /**
+     * Invokes a method the same way {@link java.lang.reflect.Proxy} does: checked exceptions that are
+     * not declared by the interface method are wrapped into {@link UndeclaredThrowableException}.
+     *
+     * @param view   Entity view instance.
+     * @param method Entity view interface method.
+     * @param args   Method's arguments.
+     * @return Method invocation result.
+     */
+    Object dispatch(Object view, Method method, Object[] args) {
+        try {
+            return invoke(view, method, args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * Returns underlying entity reloading it with the view first if the entity is not loaded with it.
+     *
+     * @return Entity that can be safely used for property access.
+     */
+    E getLoadedEntity() {
+        reloadIfNeeded();
+        return entity;
+    }
+
+    /**
+     * @return Underlying entity as is.
+     */
+    E getEntity() {
+        return entity;
+    }
+
+    Class<V> getViewInterface() {
+        return viewInterface;
+    }
+
+    /**
+     * @return Values of computed getters by property names, <code>null</code> if they are not loaded.
+     */
+    @Nullable
+    Map<String, Object> getComputedValues() {
+        return computedValues;
+    }
+
+    private void storeComputedValues(@Nullable Map<String, Object> values) {
+        computedValues = values == null ? null : new HashMap<>(values);
+    }
+
+    private void reloadIfNeeded() {
+        if (!loadStateChecked) {
+            //Checking view graph is expensive, so it is done only when properties are accessed
+            needReload = !getFactory().isLoadedWithView(entity, getInfo().getView());
+            loadStateChecked = true;
+        }
+        if (needReload) {
+            View view = getInfo().getView();
+            log.trace("Reloading entity {} using view {}", entity, view);
+            entity = getFactory().reload(entity, view);
+            needReload = false;
+            wrappedResults = null;
+        }
+    }
+
+    /**
+     * Invokes methods defined for all entity views in BaseEntityView.
+     *
+     * @param proxy  Entity view interface instance.
+     * @param args   Method's arguments.
+     * @param method Method candidate to be invoked.
+     * @return Method invocation result.
+     * @throws Throwable Exception thrown by the entity method.
+     */
+    //TODO We'd better create BaseEntityViewImpl and implement its methods there like in JPA Interfaces
+    private Object executeBaseEntityMethod(Object proxy, Object[] args, Method method) throws Throwable {
+        String methodName = method.getName();
+        log.trace("Invoking method {} from BaseEntityView", methodName);
+        if ("getOrigin".equals(methodName)) {
+            return entity;
+        } else if ("reload".equals(methodName)) {
+            //noinspection unchecked
+            return reload((Class) args[0], proxy);
+        } else if ("getInterfaceClass".equals(methodName)) {
+            return viewInterface;
+        } else {
+            return EntityMethodAccessor.forMethod(method).invoke(entity, args);
+        }
+    }
+
+    /**
+     * Implementation of the {@link BaseEntityView#reload(Class)}. Does not reload entity from data store if
+     * we reload to a "parent" interface.
+     *
+     * @param newViewInterface Target interface class.
+     * @param proxy            Current Entity View interface instance.
+     * @param <T>              Target interface class.
+     * @return Target interface instance.
+     */
+    private <T extends BaseEntityView> T reload(Class<T> newViewInterface, Object proxy) {
+        if (viewInterface.isAssignableFrom(newViewInterface))
+            //noinspection unchecked
+            return (T) proxy;
+        //noinspection unchecked
+        return (T) getFactory().wrapLoaded(entity, newViewInterface, getLoadedView());
+    }
+
+    /**
+     * @return CUBA view the entity is known to be loaded with, <code>null</code> if it is not checked yet.
+     */
+    private View getLoadedView() {
+        return loadStateChecked && !needReload ? getInfo().getView() : null;
+    }
+
+    /**
+     * @param propertyName Reference or collection property name.
+     * @return CUBA view the property value is known to be loaded with, <code>null</code> if it is unknown.
+     */
+    private View getLoadedView(String propertyName) {
+        View loadedView = getLoadedView();
+        ViewProperty property = loadedView == null || propertyName == null ? null : loadedView.getProperty(propertyName);
+        return property == null ? null : property.getView();
+    }
+
+    /**
+     * Executes entity methods apart from setters. Setter methods are executed separately.
+     *
+     * @param method       Method to be executed.
+     * @param args         Method's arguments.
+     * @param entityMethod Effective instance's method that will be executed.
+     * @return Method invocation result.
+     * @throws Throwable Exception thrown by the entity method.
+     */
+    private Object executeEntityMethod(Method method, Object[] args, Method entityMethod) throws Throwable {
+        log.trace("Invoking method {} from Entity class: {} name: {}", method.getName(), entity.getClass(), entity.toString());
+        Object result = EntityMethodAccessor.forMethod(entityMethod).invoke(entity, args);
+        return wrapResult(method, entityMethod, result);
+    }
+
+    /**
+     * Default interface method invocation.
+     *
+     * @param proxy  Entity View interface proxy instance.
+     * @param method Interface default method to be invoked.
+     * @param args   Method's arguments.
+     * @return Default interface method invocation result.
+     * @throws Throwable Exception thrown by the default method.
+     * @see DefaultMethodInvoker
+     */
+    private Object executeDefaultMethod(Object proxy, Method method, Object[] args) throws Throwable {
+        log.trace("Invoking default method {} from interface {}", method.getName(), method.getDeclaringClass());
+        Object result = DefaultMethodInvoker.forMethod(viewInterface, method).invoke(proxy, args);
+        return wrapResult(method, method, result);
+    }
+
+    /**
+     * Checks if a method's invocation can be delegated to a class.
+     *
+     * @param delegateFromMethod Method to be invoked.
+     * @param delegateToClass    Candidate class.
+     * @return Method instance if the class contain its definition.
+     */
+    static Method getDelegateMethodCandidate(Method delegateFromMethod, Class<?> delegateToClass) {
+        Method entityMethod = MethodUtils.getAccessibleMethod(delegateToClass, delegateFromMethod.getName(), delegateFromMethod.getParameterTypes());
+
+        if (entityMethod != null) {
+
+            if (delegateFromMethod.getReturnType().isAssignableFrom(entityMethod.getReturnType()))
+                return entityMethod;
+
+            if (isWrappable(delegateFromMethod, entityMethod))
+                return entityMethod;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if a method's invocation result can be wrapped into entity view.
+     *
+     * @param viewMethod   Method to check.
+     * @param entityMethod Effective entity method to be invoked.
+     * @return True if invocation result can be wrapped.
+     */
+    static boolean isWrappable(Method viewMethod, Method entityMethod) {
+        return Entity.class.isAssignableFrom(entityMethod.getReturnType())
+                && BaseEntityView.class.isAssignableFrom(viewMethod.getReturnType());
+    }
+
+    /**
+     * Wraps method invocation result into entity view if needed. For lists, sets and other collections of entities
+     * returns wrapping list, set or collection that wraps every element into entity view.
+     *
+     * @param method       Method to be invoked.
+     * @param entityMethod Effective entity method to be wrapped.
+     * @param result       Invocation result.
+     * @return Wrapped result.
+     */
+    private Object wrapResult(Method method, Method entityMethod, Object result) {
+        if (result == null || !(result instanceof BaseEntityView || result instanceof Collection || isWrappable(method, entityMethod))) {
+            return result;
+        }
+        return wrapResult(method, entityMethod, result, EntityViewWrapper.getReturnViewType(method), null);
+    }
+
+    /**
+     * Wraps method invocation result using resolved view type.
+     *
+     * @param method       Method to be invoked.
+     * @param entityMethod Effective entity method to be wrapped.
+     * @param result       Invocation result.
+     * @param viewType     Type returned by the method, collection element type for collections.
+     * @param loadedView   CUBA view the result is loaded with, <code>null</code> if unknown.
+     * @return Wrapped result.
+     */
+    private Object wrapResult(Method method, Method entityMethod, Object result, Class<?> viewType, @Nullable View loadedView) {
+        if (result == null) {
+            return result;
+        }
+        if (result instanceof BaseEntityView && isWrappable(method, entityMethod)) {
+            Class<?> srcViewType = ((BaseEntityView) result).getInterfaceClass();
+            if (srcViewType == viewType) {
+                return result;
+            } else {
+                return ((BaseEntityView) result).reload(viewType);
+            }
+        }
+        if (result instanceof List) {
+            log.trace("Method {} return type {}", method, viewType);
+            return new WrappingList((List<Entity>) result, viewType, getFactory(), loadedView);
+        }
+        if (result instanceof Collection && BaseEntityView.class.isAssignableFrom(viewType)) {
+            log.trace("Method {} return type {}", method, viewType);
+            if (result instanceof Set) {
+                return new WrappingSet((Set<Entity>) result, viewType, getFactory(), loadedView);
+            }
+            return new WrappingCollection((Collection<Entity>) result, viewType, getFactory(), loadedView);
+        }
+        if (isWrappable(method, entityMethod)) {
+            //noinspection unchecked
+            return getFactory().wrapLoaded((Entity) result, (Class) method.getReturnType(), loadedView);
+        } else {
+            return result;
+        }
+    }
+
+    /**
+     * Entity getter result and its wrapper.
+     */
+    private static final class WrappedResult {
+
+        private final Object source;
+        private final Object wrapper;
+
+        WrappedResult(Object source, Object wrapper) {
+            this.source = source;
+            this.wrapper = wrapper;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Collection that wraps its elements - entities into entity views. Used for one-to-many relationship
+ * attributes declared as {@link Collection}, see {@link WrappingSet} for sets and {@link WrappingList} for lists.
+ *
+ * @param <E> entity type.
+ * @param <V> entity view type.
+ */
+public class WrappingCollection<E extends Entity<K>, V extends BaseEntityView<E, K>, K> extends AbstractCollection<V> {
+
+    private static final Logger log = LoggerFactory.getLogger(WrappingCollection.class);
+
+    private Collection<E> delegate;
+
+    private Class<V> entityView;
+
+    private transient Map<E, V> entityViewsCache;
+
+    private transient EntityViewFactory entityViewFactory;
+
+    private transient boolean prefetched;
+
+    private transient View loadedView;
+
+    /**
+     * Creates collection of entities that were loaded with a CUBA view.
+     *
+     * @param delegate          Entities.
+     * @param entityView        Entity view interface of elements.
+     * @param entityViewFactory Factory that wraps elements.
+     * @param loadedView        CUBA view the entities are loaded with, <code>null</code> if unknown.
+     * @see EntityViewFactory#wrapLoaded(Entity, Class, View)
+     */
+    public WrappingCollection(Collection<E> delegate, Class<V> entityView, EntityViewFactory entityViewFactory, @Nullable View loadedView) {
+        this.delegate = delegate;
+        this.entityView = entityView;
+        this.entityViewFactory = entityViewFactory;
+        this.loadedView = loadedView;
+        entityViewsCache = new HashMap<>(delegate.size());
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof BaseEntityView && delegate.contains(((BaseEntityView) o).getOrigin());
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        prefetchIfNeeded();
+        return new WrappingIterator(delegate.iterator());
+    }
+
+    @Override
+    public boolean add(V v) {
+        E origin = v.getOrigin();
+        entityViewsCache.put(origin, v);
+        return delegate.add(origin);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof BaseEntityView)) {
+            return false;
+        }
+        Entity origin = ((BaseEntityView) o).getOrigin();
+        //noinspection SuspiciousMethodCalls
+        entityViewsCache.remove(origin);
+        return delegate.remove(origin);
+    }
+
+    @Override
+    public void clear() {
+        entityViewsCache.clear();
+        delegate.clear();
+    }
+
+    /**
+     * Wraps all elements that are not wrapped yet. Entities that are not loaded with the entity view are
+     * reloaded in batches instead of reloading every entity separately on its property access.
+     * It is done automatically on the first iteration.
+     *
+     * @see EntityViewFactory#wrapAllPrefetched(Collection, Class, com.haulmont.cuba.core.global.View)
+     */
+    public void prefetch() {
+        prefetched = true;
+        List<E> notWrapped = new ArrayList<>();
+        for (E element : delegate) {
+            if (element != null && !entityViewsCache.containsKey(element)) {
+                notWrapped.add(element);
+            }
+        }
+        if (!notWrapped.isEmpty()) {
+            log.trace("Wrapping {} elements and caching them", notWrapped.size());
+            List<V> wrapped = entityViewFactory.wrapAllPrefetched(notWrapped, entityView, loadedView);
+            for (int i = 0; i < notWrapped.size(); i++) {
+                ViewInterfaceInvocationHandler.setLazyGroup(wrapped.get(i), delegate);
+                entityViewsCache.putIfAbsent(notWrapped.get(i), wrapped.get(i));
+            }
+        }
+    }
+
+    private void prefetchIfNeeded() {
+        if (!prefetched) {
+            prefetch();
+        }
+    }
+
+    private V wrapElement(E element) {
+        if (element == null) {
+            return null;
+        }
+        return entityViewsCache.computeIfAbsent(element, e -> {
+            log.trace("Wrapping {} and caching it", e);
+            V result = entityViewFactory.wrapLoaded(e, entityView, loadedView);
+            //Lazy properties are loaded for all elements of the collection at once
+            ViewInterfaceInvocationHandler.setLazyGroup(result, delegate);
+            return result;
+        });
+    }
+
+
+    class WrappingIterator implements Iterator<V> {
+
+        private Iterator<E> delegate;
+
+        private E lastExtracted = null; //We need it to handle remove() properly.
+
+        WrappingIterator(Iterator<E> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public V next() {
+            E next = delegate.next();
+            lastExtracted = next;
+            return wrapElement(next);
+        }
+
+        @Override
+        public void remove() {
+            entityViewsCache.remove(lastExtracted);
+            delegate.remove();
+        }
+    }
+
+}
@@ -2,10 +2,13 @@ package com.haulmont.addons.cuba.entity.views.factory;
 
 import com.haulmont.addons.cuba.entity.views.BaseEntityView;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,9 +37,34 @@ public class WrappingList<E extends Entity<K>, V extends BaseEntityView<E, K>, K
 
     private transient Map<E, V> entityViewsCache;
 
+    private transient EntityViewFactory entityViewFactory;
+
+    private transient boolean prefetched;
+
+    private transient View loadedView;
+
     public WrappingList(List<E> delegate, Class<V> entityView) {
+        this(delegate, entityView, AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class));
+    }
+
+    public WrappingList(List<E> delegate, Class<V> entityView, EntityViewFactory entityViewFactory) {
+        this(delegate, entityView, entityViewFactory, null);
+    }
+
+    /**
+     * Creates list of entities that were loaded with a CUBA view.
+     *
+     * @param delegate          Entities.
+     * @param entityView        Entity view interface of elements.
+     * @param entityViewFactory Factory that wraps elements.
+     * @param loadedView        CUBA view the entities are loaded with, <code>null</code> if unknown.
+     * @see EntityViewFactory#wrapLoaded(Entity, Class, View)
+     */
+    public WrappingList(List<E> delegate, Class<V> entityView, EntityViewFactory entityViewFactory, @Nullable View loadedView) {
         this.delegate = delegate;
         this.entityView = entityView;
+        this.entityViewFactory = entityViewFactory;
+        this.loadedView = loadedView;
         entityViewsCache = new HashMap<>(delegate.size());
     }
 
@@ -57,19 +85,20 @@ public class WrappingList<E extends Entity<K>, V extends BaseEntityView<E, K>, K
 
     @Override
     public Iterator<V> iterator() {
+        prefetchIfNeeded();
         return new WrappingListIterator(delegate.listIterator());
     }
 
     @Override
     public Object[] toArray() {
-        return delegate.stream().map(e -> wrapElement(e)).toArray();
+        prefetched = true;
+        return wrapElements(delegate).toArray();
     }
 
     @Override
-    public <V> V[] toArray(V[] a) {
-        Object[] objects = delegate.toArray(new Object[a.length]);
-        List collect = Arrays.stream(objects).map(e -> wrapElement((E) e)).collect(Collectors.toList());
-        return (V[]) collect.toArray(a);
+    public <T> T[] toArray(T[] a) {
+        prefetched = true;
+        return wrapElements(delegate).toArray(a);
     }
 
     @Override
@@ -138,6 +167,7 @@ public class WrappingList<E extends Entity<K>, V extends BaseEntityView<E, K>, K
 
     @Override
     public V get(int index) {
+        prefetchIfNeeded();
         return wrapElement(delegate.get(index));
     }
 
@@ -173,23 +203,76 @@ public class WrappingList<E extends Entity<K>, V extends BaseEntityView<E, K>, K
 
     @Override
     public ListIterator<V> listIterator() {
+        prefetchIfNeeded();
         return new WrappingListIterator(delegate.listIterator());
     }
 
     @Override
     public ListIterator<V> listIterator(int index) {
+        prefetchIfNeeded();
         return new WrappingListIterator(delegate.listIterator(index));
     }
 
     @Override
     public List<V> subList(int fromIndex, int toIndex) {
-        return new WrappingList<>(delegate.subList(fromIndex, toIndex), entityView);
+        return new WrappingList<>(delegate.subList(fromIndex, toIndex), entityView, entityViewFactory, loadedView);
+    }
+
+    /**
+     * Wraps all elements that are not wrapped yet. Entities that are not loaded with the entity view are
+     * reloaded in batches instead of reloading every entity separately on its property access.
+     * It is done automatically on the first element access, so an explicit call is needed only to
+     * load elements at a convenient moment.
+     *
+     * @see EntityViewFactory#wrapAllPrefetched(Collection, Class, com.haulmont.cuba.core.global.View)
+     */
+    public void prefetch() {
+        prefetched = true;
+        wrapElements(delegate);
+    }
+
+    private void prefetchIfNeeded() {
+        if (!prefetched) {
+            prefetch();
+        }
+    }
+
+    /**
+     * Wraps elements in bulk: entities that are not wrapped yet are wrapped with a single factory call
+     * that reloads entities missing view attributes in batches.
+     *
+     * @param elements Entities to be wrapped.
+     * @return Entity views in the same order.
+     */
+    private List<V> wrapElements(List<E> elements) {
+        List<E> notWrapped = new ArrayList<>();
+        for (E element : elements) {
+            if (element != null && !entityViewsCache.containsKey(element)) {
+                notWrapped.add(element);
+            }
+        }
+        if (!notWrapped.isEmpty()) {
+            log.trace("Wrapping {} elements and caching them", notWrapped.size());
+            List<V> wrapped = entityViewFactory.wrapAllPrefetched(notWrapped, entityView, loadedView);
+            for (int i = 0; i < notWrapped.size(); i++) {
+                ViewInterfaceInvocationHandler.setLazyGroup(wrapped.get(i), delegate);
+                entityViewsCache.putIfAbsent(notWrapped.get(i), wrapped.get(i));
+            }
+        }
+        List<V> result = new ArrayList<>(elements.size());
+        for (E element : elements) {
+            result.add(element == null ? null : entityViewsCache.get(element));
+        }
+        return result;
     }
 
     private V wrapElement(E element) {
         return entityViewsCache.computeIfAbsent(element, e -> {
             log.trace("Wrapping {} and caching it", e);
-            return EntityViewWrapper.wrap(e, entityView);
+            V result = entityViewFactory.wrapLoaded(e, entityView, loadedView);
+            //Lazy properties are loaded for all elements of the list at once
+            ViewInterfaceInvocationHandler.setLazyGroup(result, delegate);
+            return result;
         });
     }
 
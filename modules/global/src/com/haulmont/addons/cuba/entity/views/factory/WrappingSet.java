@@ -0,0 +1,61 @@
+package com.haulmont.addons.cuba.entity.views.factory;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.View;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * Set that wraps its elements - entities into entity views. Used for one-to-many relationship
+ * attributes declared as {@link Set}.
+ *
+ * @param <E> entity type.
+ * @param <V> entity view type.
+ */
+public class WrappingSet<E extends Entity<K>, V extends BaseEntityView<E, K>, K> extends WrappingCollection<E, V, K> implements Set<V> {
+
+    /**
+     * Creates set of entities that were loaded with a CUBA view.
+     *
+     * @param delegate          Entities.
+     * @param entityView        Entity view interface of elements.
+     * @param entityViewFactory Factory that wraps elements.
+     * @param loadedView        CUBA view the entities are loaded with, <code>null</code> if unknown.
+     * @see EntityViewFactory#wrapLoaded(Entity, Class, View)
+     */
+    public WrappingSet(Set<E> delegate, Class<V> entityView, EntityViewFactory entityViewFactory, @Nullable View loadedView) {
+        super(delegate, entityView, entityViewFactory, loadedView);
+    }
+
+    /**
+     * Compares sets as {@link java.util.AbstractSet#equals(Object)} does.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Set)) {
+            return false;
+        }
+        Collection<?> other = (Collection<?>) o;
+        return other.size() == size() && containsAll(other);
+    }
+
+    /**
+     * Computes hash code as {@link java.util.AbstractSet#hashCode()} does.
+     */
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (V element : this) {
+            result += Objects.hashCode(element);
+        }
+        return result;
+    }
+}
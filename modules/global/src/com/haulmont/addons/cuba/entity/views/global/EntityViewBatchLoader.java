@@ -0,0 +1,235 @@
+package com.haulmont.addons.cuba.entity.views.global;
+
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfigurationBean;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.contracts.Id;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loader that batches loading of entity views by ID. Loads requested through {@link #load(Id)} are queued and sent
+ * as one <code>IN</code> query per entity view interface and ID type when {@link #dispatch()} is called, when a queue
+ * reaches the batch size, when a result is requested or when the loader is closed.
+ * <pre>
+ * try (EntityViewBatchLoader loader = EntityViewBatchLoader.open()) {
+ *     List&lt;CompletableFuture&lt;SampleMinimalView&gt;&gt; views = ids.stream()
+ *             .map(id -&gt; loader.load(Id.of(id, SampleMinimalView.class)))
+ *             .collect(Collectors.toList());
+ *     views.forEach(view -&gt; process(view.join()));
+ * }
+ * </pre>
+ * Only loads requested through the loader object are batched, {@link DataManager} loads entity views one by one as usual.
+ * The loader is not thread-safe and must not be shared between threads.
+ */
+public class EntityViewBatchLoader implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityViewBatchLoader.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final DataManager dataManager;
+    private final ViewsConfiguration viewsConfiguration;
+    private final EntityViewFactory entityViewFactory;
+    private final int batchSize;
+
+    private final Map<BatchKey, Map<Object, PendingView<?>>> queues = new LinkedHashMap<>();
+
+    private boolean closed;
+
+    /**
+     * Creates batch loader.
+     *
+     * @param dataManager        Data manager that executes queries.
+     * @param viewsConfiguration Entity views configuration.
+     * @param entityViewFactory  Factory that wraps loaded entities.
+     * @param batchSize          Maximum number of IDs in one query.
+     */
+    public EntityViewBatchLoader(DataManager dataManager, ViewsConfiguration viewsConfiguration,
+                                 EntityViewFactory entityViewFactory, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.dataManager = dataManager;
+        this.viewsConfiguration = viewsConfiguration;
+        this.entityViewFactory = entityViewFactory;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Creates batch loader with {@link #DEFAULT_BATCH_SIZE} that uses application beans.
+     *
+     * @return Batch loader to be closed after use.
+     */
+    public static EntityViewBatchLoader open() {
+        return open(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates batch loader that uses application beans.
+     *
+     * @param batchSize Maximum number of IDs in one query.
+     * @return Batch loader to be closed after use.
+     */
+    public static EntityViewBatchLoader open(int batchSize) {
+        return new EntityViewBatchLoader(AppBeans.get(DataManager.class),
+                AppBeans.get(ViewsConfiguration.class),
+                AppBeans.get(EntityViewFactory.NAME, EntityViewFactory.class),
+                batchSize);
+    }
+
+    /**
+     * Queues loading of an entity view by ID.
+     *
+     * @param entityId ID of an entity view, e.g. <code>Id.of(id, SampleMinimalView.class)</code>.
+     * @param <E>      Entity class.
+     * @param <V>      Entity view interface class.
+     * @param <K>      Entity ID key class.
+     * @return Future completed with the entity view or <code>null</code> if the entity is not found. Waiting for
+     * the future dispatches all queued loads.
+     */
+    public <E extends Entity<K>, V extends BaseEntityView<E, K>, K> CompletableFuture<V> load(Id<V, K> entityId) {
+        if (closed) {
+            throw new IllegalStateException("Batch loader is closed");
+        }
+        Class<V> viewInterface = entityId.getEntityClass();
+        K id = Objects.requireNonNull(entityId.getValue(), "Entity ID is null");
+        if (!BaseEntityView.class.isAssignableFrom(viewInterface)) {
+            throw new IllegalArgumentException(String.format("%s is not an entity view interface", viewInterface.getName()));
+        }
+        BatchKey key = new BatchKey(viewInterface, id.getClass());
+        Map<Object, PendingView<?>> queue = queues.computeIfAbsent(key, k -> new LinkedHashMap<>());
+        //noinspection unchecked
+        PendingView<V> result = (PendingView<V>) queue.computeIfAbsent(id, k -> new PendingView<>());
+        if (queue.size() >= batchSize) {
+            queues.remove(key);
+            loadBatch(key, queue);
+        }
+        return result;
+    }
+
+    /**
+     * Sends all queued loads to the database.
+     */
+    public void dispatch() {
+        while (!queues.isEmpty()) {
+            Map.Entry<BatchKey, Map<Object, PendingView<?>>> entry = queues.entrySet().iterator().next();
+            queues.remove(entry.getKey());
+            loadBatch(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Dispatches queued loads, no loads can be requested after that.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            dispatch();
+        } finally {
+            closed = true;
+        }
+    }
+
+    private void loadBatch(BatchKey key, Map<Object, PendingView<?>> queue) {
+        try {
+            ViewsConfigurationBean.ViewInterfaceInfo info = viewsConfiguration.getEffectiveViewDefinition(key.viewInterface);
+            View view = info.getView();
+            log.debug("Loading {} instances of {} by ID", queue.size(), key.viewInterface);
+            //noinspection unchecked
+            LoadContext<Entity> context = LoadContext.create((Class<Entity>) info.getEntityClass())
+                    .setIds(new ArrayList<>(queue.keySet()))
+                    .setView(view);
+            Map<Object, Entity> loaded = new LinkedHashMap<>();
+            for (Entity entity : dataManager.loadList(context)) {
+                Entity origin = entityViewFactory.unwrap(entity);
+                loaded.put(origin.getId(), origin);
+            }
+            for (Map.Entry<Object, PendingView<?>> entry : queue.entrySet()) {
+                //noinspection unchecked
+                PendingView<Object> pending = (PendingView<Object>) entry.getValue();
+                Entity entity = loaded.get(entry.getKey());
+                //noinspection unchecked
+                pending.complete(entity == null ? null : entityViewFactory.wrapLoaded(entity, (Class) key.viewInterface, view));
+            }
+        } catch (RuntimeException e) {
+            queue.values().forEach(pending -> pending.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Future that dispatches the queued loads when its result is requested before it is completed.
+     */
+    private class PendingView<V> extends CompletableFuture<V> {
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            dispatchIfNeeded();
+            return super.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            dispatchIfNeeded();
+            return super.get(timeout, unit);
+        }
+
+        @Override
+        public V join() {
+            dispatchIfNeeded();
+            return super.join();
+        }
+
+        private void dispatchIfNeeded() {
+            if (!isDone()) {
+                dispatch();
+            }
+        }
+    }
+
+    private static final class BatchKey {
+
+        private final Class<? extends BaseEntityView> viewInterface;
+        private final Class<?> idClass;
+
+        BatchKey(Class<? extends BaseEntityView> viewInterface, Class<?> idClass) {
+            this.viewInterface = viewInterface;
+            this.idClass = idClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            BatchKey batchKey = (BatchKey) o;
+            return viewInterface == batchKey.viewInterface && idClass == batchKey.idClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(viewInterface, idClass);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.haulmont.addons.cuba.entity.views.global;
+
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewEngine;
+import com.haulmont.cuba.core.config.Config;
+import com.haulmont.cuba.core.config.Property;
+import com.haulmont.cuba.core.config.Source;
+import com.haulmont.cuba.core.config.SourceType;
+import com.haulmont.cuba.core.config.defaults.Default;
+import com.haulmont.cuba.core.config.defaults.DefaultBoolean;
+import com.haulmont.cuba.core.config.defaults.DefaultInt;
+
+/**
+ * Application properties of entity views, <code>entityviews.*</code>.
+ */
+@Source(type = SourceType.APP)
+public interface EntityViewsConfig extends Config {
+
+    /**
+     * @return Strategy of entity view instances creation, {@link EntityViewEngine#GENERATED} by default.
+     */
+    @Property("entityviews.engine")
+    @Default("GENERATED")
+    EntityViewEngine getEngine();
+
+    /**
+     * @return Number of entities reloaded by one query when entity views of a collection are prefetched.
+     */
+    @Property("entityviews.prefetchBatchSize")
+    @DefaultInt(100)
+    int getPrefetchBatchSize();
+
+    /**
+     * @return True if missing attributes of managed entities are loaded through the persistence context inside
+     * a transaction on the middleware.
+     */
+    @Property("entityviews.transactionalLoading")
+    @DefaultBoolean(true)
+    boolean getTransactionalLoading();
+
+    /**
+     * @return Maximum number of entity view loads running asynchronously at the same time.
+     */
+    @Property("entityviews.async.maxConcurrency")
+    @DefaultInt(8)
+    int getAsyncMaxConcurrency();
+}
@@ -1,17 +1,38 @@
 package com.haulmont.addons.cuba.entity.views.global;
 
+import com.google.common.collect.MapMaker;
 import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.addons.cuba.entity.views.scan.ViewsConfiguration;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.EntityStates;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * The class adds support for Entity Views to determine the state of an underlying entity.
  * @see EntityStates
  */
 public class ViewsSupportEntityStates extends EntityStates {
 
+    @Inject
+    protected ViewsConfiguration viewsConfiguration;
+
+    /**
+     * CUBA views entities were loaded with by view-aware data manager. Keys are weak and compared by identity.
+     */
+    private final Map<Entity, View> loadedViews = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Values of computed entity view getters loaded by view-aware data manager. Keys are weak and compared by identity.
+     */
+    private final Map<Entity, Map<String, Object>> computedValues = new MapMaker().weakKeys().makeMap();
 
     @Override
     public boolean isNew(Object entity) {
@@ -88,4 +109,88 @@ public class ViewsSupportEntityStates extends EntityStates {
         return isManaged(entityView.getOrigin());
     }
 
+    /**
+     * Checks if the entity is loaded with all attributes of the view. If the entity is marked as loaded with
+     * a view that covers the required one, its own attributes are not checked. References and collection elements
+     * are checked anyway, since they may be replaced after loading.
+     * @see EntityStates#isLoadedWithView(Entity, View)
+     * @see ViewsConfiguration#isViewCovered(View, View)
+     */
+    @Override
+    public boolean isLoadedWithView(Entity entity, View view) {
+        Entity origin = entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity;
+        View loadedView = loadedViews.get(origin);
+        if (loadedView != null && viewsConfiguration.isViewCovered(loadedView, view)) {
+            return isReferencesLoadedWithView(origin, view);
+        }
+        return super.isLoadedWithView(origin, view);
+    }
+
+    private boolean isReferencesLoadedWithView(Entity entity, View view) {
+        for (ViewProperty property : view.getProperties()) {
+            View propertyView = property.getView();
+            if (propertyView == null) {
+                continue;
+            }
+            Object value = entity.getValue(property.getName());
+            if (value instanceof Entity) {
+                if (!isLoadedWithView((Entity) value, propertyView)) {
+                    return false;
+                }
+            } else if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    if (element instanceof Entity && !isLoadedWithView((Entity) element, propertyView)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks an entity as loaded with a view, the mark is checked by {@link #isLoadedWithView(Entity, View)}.
+     * The mark is kept while the entity instance is reachable and should be set only for entities loaded by
+     * data manager. It applies to attributes of the entity itself, not to the entities it references.
+     *
+     * @param entity Entity or entity view.
+     * @param view   CUBA view the entity is loaded with.
+     */
+    public void setLoadedWithView(Entity entity, View view) {
+        Entity origin = entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity;
+        loadedViews.put(origin, view);
+    }
+
+    /**
+     * @param entity Entity or entity view.
+     * @return CUBA view the entity is marked as loaded with, <code>null</code> if the entity is not marked.
+     */
+    @Nullable
+    public View getLoadedView(Entity entity) {
+        Entity origin = entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity;
+        return loadedViews.get(origin);
+    }
+
+    /**
+     * Keeps values of computed entity view getters evaluated by the database while the entity instance is reachable.
+     *
+     * @param entity Entity or entity view.
+     * @param values Values by property names, replace values set earlier.
+     * @see com.haulmont.addons.cuba.entity.views.scan.Computed
+     */
+    public void setComputedValues(Entity entity, Map<String, Object> values) {
+        Entity origin = entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity;
+        computedValues.put(origin, values);
+    }
+
+    /**
+     * @param entity Entity or entity view.
+     * @return Values of computed getters by property names, <code>null</code> if they are not loaded.
+     */
+    @Nullable
+    public Map<String, Object> getComputedValues(Entity entity) {
+        Entity origin = entity instanceof BaseEntityView ? ((BaseEntityView) entity).getOrigin() : entity;
+        return computedValues.get(origin);
+    }
+
 }
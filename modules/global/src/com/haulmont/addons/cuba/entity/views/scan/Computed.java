@@ -0,0 +1,44 @@
+package com.haulmont.addons.cuba.entity.views.scan;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity view getter which value is evaluated in the database by a JPQL expression instead of being read
+ * from the entity. <code>{E}</code> in the expression stands for the entity of the entity view:
+ * <pre>
+ * &#64;Computed("size({E}.lines)")
+ * Integer getLineCount();
+ *
+ * &#64;Computed(value = "sum(l.amount)", from = "{E}.lines l")
+ * BigDecimal getTotalAmount();
+ * </pre>
+ * An aggregate with {@link #from()} is evaluated by a correlated subquery, so collections are not loaded to compute
+ * the value. Values are loaded together with the rows of entity views loaded by the data manager. If the value
+ * is not loaded, e.g. for a new entity, a default method body is invoked, an abstract getter returns <code>null</code>.
+ * Getters must return object types.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Computed {
+
+    /**
+     * Placeholder of the entity alias in JPQL expressions.
+     */
+    String ENTITY_ALIAS = "{E}";
+
+    /**
+     * @return JPQL expression, e.g. <code>size({E}.lines)</code> or an aggregate over {@link #from()}.
+     */
+    String value();
+
+    /**
+     * @return Optional JPQL <code>from</code> clause of a correlated subquery the expression is evaluated in,
+     * e.g. <code>{E}.lines l</code>.
+     */
+    String from() default "";
+}
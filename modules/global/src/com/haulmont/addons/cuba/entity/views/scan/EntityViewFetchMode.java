@@ -0,0 +1,25 @@
+package com.haulmont.addons.cuba.entity.views.scan;
+
+import com.haulmont.cuba.core.global.FetchMode;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets fetch mode of a reference property in the CUBA view composed for an entity view. The annotation should be
+ * placed on a getter that returns another entity view or a collection of entity views.
+ * <pre>
+ * &#64;EntityViewFetchMode(FetchMode.BATCH)
+ * SampleMinimalView getParent();
+ * </pre>
+ * Properties without the annotation use {@link FetchMode#AUTO}.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EntityViewFetchMode {
+    FetchMode value();
+}
@@ -0,0 +1,26 @@
+package com.haulmont.addons.cuba.entity.views.scan;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only entity view that is listed by a JPQL scalar projection instead of loading entities. When such
+ * entity views are loaded by a <code>select e from Entity e ...</code> query, the query is rewritten to select
+ * the view attributes only, e.g. <code>select e.id, e.name, p.id, p.name from Entity e left join e.parent p ...</code>,
+ * and every row is backed by a compact array of values.
+ * <br>
+ * The projection is used only if all abstract methods of the view are getters of persistent scalar attributes,
+ * {@link Computed} getters or single-valued references to other eligible entity views, and the view has no lazy
+ * properties. Otherwise, and for queries that cannot be rewritten, entity views are loaded the usual way.
+ * <br>
+ * {@link com.haulmont.addons.cuba.entity.views.BaseEntityView#getOrigin()} of a projected entity view loads
+ * the entity by ID on the first call.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EntityViewProjection {
+}
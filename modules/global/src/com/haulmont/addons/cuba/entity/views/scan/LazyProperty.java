@@ -0,0 +1,23 @@
+package com.haulmont.addons.cuba.entity.views.scan;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity view getter as lazy. The property is not included into the CUBA view composed for the entity view,
+ * so it is not loaded with the entity view, and is loaded on the first read instead. If the entity view is an element
+ * of a list loaded by DataManager or returned by another entity view, the property is loaded for all elements
+ * of the list with one query per batch.
+ * <pre>
+ * &#64;LazyProperty
+ * String getDescription();
+ * </pre>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LazyProperty {
+}
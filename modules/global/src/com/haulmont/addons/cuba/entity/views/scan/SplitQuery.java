@@ -0,0 +1,25 @@
+package com.haulmont.addons.cuba.entity.views.scan;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Loads collections of entity views with separate queries instead of nesting them into the CUBA view composed
+ * for the entity view. Nesting several collections into one view multiplies rows of the root entity by rows of every
+ * collection. With split loading the data manager loads root rows first and then every collection with one query per
+ * batch of parent IDs, loaded elements are set into the parents.
+ * <br>
+ * Can be put on an entity view interface to split all its collections or on a collection getter only.
+ * <pre>
+ * &#64;SplitQuery
+ * List&lt;OrderLineView&gt; getLines();
+ * </pre>
+ */
+@Documented
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SplitQuery {
+}
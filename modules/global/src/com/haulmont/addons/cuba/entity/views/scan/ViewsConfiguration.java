@@ -15,7 +15,20 @@ public interface ViewsConfiguration {
 
     Class<? extends BaseEntityView> getEffectiveView(Class<? extends BaseEntityView> viewInterface);
 
+    ViewsConfigurationBean.ViewInterfaceInfo getEffectiveViewDefinition(Class<? extends BaseEntityView> viewInterface);
+
     View getViewByInterface(Class<? extends BaseEntityView> viewInterface);
 
     ViewsConfigurationBean.ViewInterfaceInfo getViewInfoByView(View view);
+
+    /**
+     * Checks using containment precomputed for entity views if an entity loaded with one CUBA view
+     * has all attributes of another one.
+     *
+     * @param loadedView   View the entity is loaded with.
+     * @param requiredView Required view.
+     * @return True if the views are the same or both are composed for entity views and the loaded view
+     * contains all attributes of the required view.
+     */
+    boolean isViewCovered(View loadedView, View requiredView);
 }
@@ -3,16 +3,18 @@ package com.haulmont.addons.cuba.entity.views.scan;
 import com.google.common.collect.ImmutableSet;
 import com.haulmont.addons.cuba.entity.views.BaseEntityView;
 import com.haulmont.addons.cuba.entity.views.factory.EntityViewWrapper;
+import com.haulmont.addons.cuba.entity.views.factory.ViewDispatchTable;
 import com.haulmont.addons.cuba.entity.views.scan.exception.ViewInitializationException;
 import com.haulmont.chile.core.annotations.MetaProperty;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.FetchMode;
 import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewProperty;
 import com.haulmont.cuba.core.sys.events.AppContextInitializedEvent;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.support.BeanDefinitionValidationException;
 import org.springframework.context.event.EventListener;
@@ -20,10 +22,13 @@ import org.springframework.core.annotation.Order;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -44,6 +49,11 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
 
     private final Map<View, ViewInterfaceInfo> definitionsByView = new ConcurrentHashMap<>();
 
+    /**
+     * Immutable registry copy, <code>null</code> until views are initialized.
+     */
+    private volatile ViewsRegistrySnapshot snapshot;
+
     public ViewsConfigurationBean(Map<Class<? extends BaseEntityView>, ViewInterfaceInfo> viewInterfaceDefinitions) {
         this.viewInterfaceDefinitions.putAll(viewInterfaceDefinitions);
     }
@@ -60,6 +70,77 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
             info.setView(cubaView);
             definitionsByView.put(cubaView, info);
         }
+        log.debug("Building dispatch tables for EntityViews");
+        for (ViewInterfaceInfo info : viewInterfaceDefinitions.values()) {
+            info.setDispatchTable(ViewDispatchTable.build(info.getViewInterface(), info.getEntityClass()));
+        }
+        snapshot = createSnapshot();
+    }
+
+    /**
+     * Creates immutable copy of the registry with substitution chains resolved.
+     *
+     * @return Registry snapshot.
+     */
+    private ViewsRegistrySnapshot createSnapshot() {
+        Map<Class<?>, ViewsRegistrySnapshot.Resolution> resolutions = new HashMap<>();
+        for (ViewInterfaceInfo info : viewInterfaceDefinitions.values()) {
+            ViewInterfaceInfo effective = viewInterfaceDefinitions.get(resolveEffectiveView(info.getViewInterface()));
+            resolutions.put(info.getViewInterface(), new ViewsRegistrySnapshot.Resolution(info, effective));
+        }
+        log.debug("Entity views registry snapshot is created for {} views", resolutions.size());
+        return new ViewsRegistrySnapshot(resolutions, definitionsByView, buildCoveredViews());
+    }
+
+    /**
+     * Finds for every composed CUBA view, including views of references, the views whose attribute graphs
+     * are subsets of its graph.
+     *
+     * @return Covered views by covering view, views that do not cover anything are skipped.
+     */
+    private Map<View, Set<View>> buildCoveredViews() {
+        Set<View> views = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ViewInterfaceInfo info : viewInterfaceDefinitions.values()) {
+            collectViews(info.getView(), views);
+        }
+        Map<View, Set<View>> result = new IdentityHashMap<>();
+        for (View source : views) {
+            for (View target : views) {
+                if (source != target && covers(source, target)) {
+                    result.computeIfAbsent(source, v -> Collections.newSetFromMap(new IdentityHashMap<>())).add(target);
+                }
+            }
+        }
+        log.debug("View containment is computed for {} CUBA views", views.size());
+        return result;
+    }
+
+    private static void collectViews(@Nullable View view, Set<View> views) {
+        if (view != null && views.add(view)) {
+            for (ViewProperty property : view.getProperties()) {
+                collectViews(property.getView(), views);
+            }
+        }
+    }
+
+    /**
+     * Checks if an entity loaded with the source view has all attributes of the target view.
+     */
+    private static boolean covers(View source, View target) {
+        if (!target.getEntityClass().isAssignableFrom(source.getEntityClass())) {
+            return false;
+        }
+        for (ViewProperty targetProperty : target.getProperties()) {
+            ViewProperty sourceProperty = source.getProperty(targetProperty.getName());
+            if (sourceProperty == null) {
+                return false;
+            }
+            if (targetProperty.getView() != null
+                    && (sourceProperty.getView() == null || !covers(sourceProperty.getView(), targetProperty.getView()))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -69,9 +150,33 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
 
     @Override
     public ViewInterfaceInfo getViewInterfaceDefinition(Class<? extends BaseEntityView> interfaceClass) {
+        ViewsRegistrySnapshot current = snapshot;
+        if (current != null) {
+            ViewsRegistrySnapshot.Resolution resolution = current.resolve(interfaceClass);
+            return resolution == null ? null : resolution.getDefinition();
+        }
         return viewInterfaceDefinitions.get(interfaceClass);
     }
 
+    /**
+     * Returns definition of the effective entity view based on entity view substitution chain.
+     *
+     * @param viewInterface Initial view interface type that we want to return in our code.
+     * @return Effective entity view definition.
+     */
+    @Override
+    public ViewInterfaceInfo getEffectiveViewDefinition(Class<? extends BaseEntityView> viewInterface) {
+        ViewsRegistrySnapshot current = snapshot;
+        if (current != null) {
+            ViewsRegistrySnapshot.Resolution resolution = current.resolve(viewInterface);
+            if (resolution == null) {
+                throw notRegistered(viewInterface);
+            }
+            return resolution.getEffective();
+        }
+        return viewInterfaceDefinitions.get(resolveEffectiveView(viewInterface));
+    }
+
     /**
      * Returns effective entity view class based on entity view substitution chain.
      *
@@ -80,13 +185,17 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
      */
     @Override
     public Class<? extends BaseEntityView> getEffectiveView(Class<? extends BaseEntityView> viewInterface) {
+        return getEffectiveViewDefinition(viewInterface).getViewInterface();
+    }
+
+    /**
+     * Walks through the substitution chain. Used until the registry snapshot is created.
+     */
+    private Class<? extends BaseEntityView> resolveEffectiveView(Class<? extends BaseEntityView> viewInterface) {
         log.trace("Getting effective view for {}", viewInterface);
         ViewInterfaceInfo info = viewInterfaceDefinitions.get(viewInterface);
         if (info == null) {
-            throw new ViewInitializationException(
-                    String.format("View interface %s was not initially registered in ViewsConfigurationBean#scan",
-                            viewInterface)
-            );
+            throw notRegistered(viewInterface);
         }
         while (info.getReplacedBy() != null) {
             info = viewInterfaceDefinitions.get(info.getReplacedBy());
@@ -95,6 +204,13 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
         return info.getViewInterface();
     }
 
+    private static ViewInitializationException notRegistered(Class<? extends BaseEntityView> viewInterface) {
+        return new ViewInitializationException(
+                String.format("View interface %s was not initially registered in ViewsConfigurationBean#scan",
+                        viewInterface)
+        );
+    }
+
 
     /**
      * Returns CUBA view definition based on Entity View class.
@@ -104,16 +220,26 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
      */
     @Override
     public View getViewByInterface(Class<? extends BaseEntityView> viewInterface) {
-        ViewInterfaceInfo viewInterfaceInfo = viewInterfaceDefinitions.get(viewInterface);
+        ViewInterfaceInfo viewInterfaceInfo = getViewInterfaceDefinition(viewInterface);
         if (viewInterfaceInfo == null) {
             throw new ViewInitializationException(String.format("View %s is not registered", viewInterface));
         }
         return viewInterfaceInfo.getView();
     }
 
+    @Override
+    public boolean isViewCovered(View loadedView, View requiredView) {
+        if (loadedView == requiredView) {
+            return true;
+        }
+        ViewsRegistrySnapshot current = snapshot;
+        return current != null && current.covers(loadedView, requiredView);
+    }
+
     @Override
     public ViewInterfaceInfo getViewInfoByView(View view) {
-        return definitionsByView.get(view);
+        ViewsRegistrySnapshot current = snapshot;
+        return current != null ? current.getDefinitionByView(view) : definitionsByView.get(view);
     }
 
     /**
@@ -182,8 +308,20 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
         // skip utility methods from BaseEntityView
         viewInterfaceMethods.removeAll(baseEntityViewMethods);
 
+        //computed getters are evaluated by the database and are not added to the view
+        Map<String, String> computedExpressions = new LinkedHashMap<>();
+        for (Method viewMethod : effectiveView.getMethods()) {
+            if (viewMethod.isAnnotationPresent(Computed.class)) {
+                computedExpressions.put(methodName2FieldName(viewMethod), compileComputed(effectiveView, viewMethod));
+                viewInterfaceMethods.remove(viewMethod);
+            }
+        }
+        viewInterfaceInfo.setComputedExpressions(computedExpressions);
+
         View result = new View(viewInterfaceInfo.getEntityClass(), viewInterfaceInfo.getViewName());
         viewInterfaceInfo.setView(result);
+        Map<String, View> lazyViews = new HashMap<>();
+        Set<String> splitProperties = new LinkedHashSet<>();
         log.trace("View for: {} is created: {}, adding properties", effectiveView.getName(), result.getName());
         viewInterfaceMethods.forEach(viewMethod -> {
             //Check methods to have delegatable method in entity
@@ -213,40 +351,133 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
                 View refFieldView = composeCubaView(refFieldInterfaceInfo.getViewInterface(), parents);
                 refFieldInterfaceInfo.setView(refFieldView);
 
-                addProperty(result, methodName2FieldName(viewMethod), refFieldView);
+                boolean split = isSplitQuery(effectiveView, viewMethod);
+                if (viewMethod.isAnnotationPresent(SplitQuery.class) && !split) {
+                    throw new ViewInitializationException(
+                            String.format("Method %s of view interface %s is annotated with @SplitQuery, but does not return a collection"
+                                    , viewMethod.getName()
+                                    , effectiveView.getName()));
+                }
+                FetchMode fetchMode = getFetchMode(viewMethod);
+                if (split) {
+                    //Collection is loaded by a separate query keyed by parent IDs
+                    splitProperties.add(methodName2FieldName(viewMethod));
+                    fetchMode = fetchMode == FetchMode.AUTO ? FetchMode.BATCH : fetchMode;
+                }
+                addProperty(isLazy(viewMethod) || split ? createLazyView(viewInterfaceInfo, viewMethod, lazyViews) : result,
+                        methodName2FieldName(viewMethod), refFieldView, fetchMode);
             } else {
-                addProperty(result, methodName2FieldName(viewMethod), null);
+                if (viewMethod.isAnnotationPresent(SplitQuery.class)) {
+                    throw new ViewInitializationException(
+                            String.format("Method %s of view interface %s is annotated with @SplitQuery, but does not return entity views"
+                                    , viewMethod.getName()
+                                    , effectiveView.getName()));
+                }
+                if (viewMethod.isAnnotationPresent(EntityViewFetchMode.class)) {
+                    throw new ViewInitializationException(
+                            String.format("Method %s of view interface %s is annotated with @EntityViewFetchMode, but does not return an entity view"
+                                    , viewMethod.getName()
+                                    , effectiveView.getName()));
+                }
+                addProperty(isLazy(viewMethod) ? createLazyView(viewInterfaceInfo, viewMethod, lazyViews) : result,
+                        methodName2FieldName(viewMethod), null, FetchMode.AUTO);
             }
         });
+        viewInterfaceInfo.setLazyViews(lazyViews);
+        viewInterfaceInfo.setSplitProperties(splitProperties);
         return result;
     }
 
+    /**
+     * Compiles a computed getter to a JPQL expression, an aggregate with <code>from</code> becomes a correlated
+     * subquery.
+     *
+     * @param viewInterface Entity view interface.
+     * @param viewMethod    Getter annotated with {@link Computed}.
+     * @return JPQL expression with {@link Computed#ENTITY_ALIAS} placeholders.
+     */
+    private static String compileComputed(Class<? extends BaseEntityView> viewInterface, Method viewMethod) {
+        Computed computed = viewMethod.getAnnotation(Computed.class);
+        if (viewMethod.getParameterCount() != 0 || viewMethod.getReturnType().isPrimitive()
+                || BaseEntityView.class.isAssignableFrom(viewMethod.getReturnType())
+                || Collection.class.isAssignableFrom(viewMethod.getReturnType())) {
+            throw new ViewInitializationException(
+                    String.format("Method %s of view interface %s is annotated with @Computed, but is not a getter of a scalar object type"
+                            , viewMethod.getName()
+                            , viewInterface.getName()));
+        }
+        if (StringUtils.isBlank(computed.value()) || !(computed.value() + computed.from()).contains(Computed.ENTITY_ALIAS)) {
+            throw new ViewInitializationException(
+                    String.format("JPQL expression of computed method %s of view interface %s must refer the entity as %s"
+                            , viewMethod.getName()
+                            , viewInterface.getName()
+                            , Computed.ENTITY_ALIAS));
+        }
+        return StringUtils.isBlank(computed.from())
+                ? computed.value()
+                : "(select " + computed.value() + " from " + computed.from() + ")";
+    }
+
+    private static boolean isLazy(Method viewMethod) {
+        return viewMethod.isAnnotationPresent(LazyProperty.class);
+    }
+
+    /**
+     * Checks if a getter returns a collection that is loaded with a separate query.
+     *
+     * @param viewInterface Entity view interface.
+     * @param viewMethod    Entity view getter.
+     * @return True if the getter returns a collection and it or the view interface is annotated with {@link SplitQuery}.
+     */
+    public static boolean isSplitQuery(Class<? extends BaseEntityView> viewInterface, Method viewMethod) {
+        return Collection.class.isAssignableFrom(viewMethod.getReturnType())
+                && (viewMethod.isAnnotationPresent(SplitQuery.class)
+                || viewInterface.isAnnotationPresent(SplitQuery.class)
+                || viewMethod.getDeclaringClass().isAnnotationPresent(SplitQuery.class));
+    }
+
+    /**
+     * Creates a view that loads only a lazy property, the property is added to it by the caller.
+     */
+    private View createLazyView(ViewInterfaceInfo viewInterfaceInfo, Method viewMethod, Map<String, View> lazyViews) {
+        View lazyView = new View(viewInterfaceInfo.getEntityClass(), false).setLoadPartialEntities(true);
+        lazyViews.put(methodName2FieldName(viewMethod), lazyView);
+        log.trace("Property {} of view {} is lazy", viewMethod.getName(), viewInterfaceInfo.getViewName());
+        return lazyView;
+    }
+
     /**
      * Adds a property to a CUBA view.
      *
      * @param targetView View to be modified.
      * @param propName   Property name.
      * @param propView   View for complex property type.
+     * @param fetchMode  Fetch mode for complex property type.
      */
-    //TODO support fetch mode and lazy fetching
-    private void addProperty(View targetView, String propName, @Nullable View propView) {
+    private void addProperty(View targetView, String propName, @Nullable View propView, FetchMode fetchMode) {
         log.trace("Adding property {} to view {}", propName, targetView.getName());
         if (!targetView.containsProperty(propName)) {
             if (propView == null) {
                 targetView.addProperty(propName);
             } else {
-                targetView.addProperty(propName, propView);
+                log.trace("Property {} fetch mode: {}", propName, fetchMode);
+                targetView.addProperty(propName, propView, fetchMode);
             }
         }
     }
 
+    private static FetchMode getFetchMode(Method viewMethod) {
+        EntityViewFetchMode fetchMode = viewMethod.getAnnotation(EntityViewFetchMode.class);
+        return fetchMode == null ? FetchMode.AUTO : fetchMode.value();
+    }
+
     private String methodName2FieldName(Method method) throws ViewInitializationException {
         try {
-            PropertyDescriptor propertyDescriptor = BeanUtils.findPropertyForMethod(method);
-            if (propertyDescriptor == null) {
+            String propertyName = EntityViewWrapper.getPropertyName(method);
+            if (propertyName == null) {
                 throw new BeanDefinitionValidationException(String.format("Method %s is not an accessor method", method.getName()));
             }
-            return propertyDescriptor.getName();
+            return propertyName;
         } catch (BeansException e) {
             throw new ViewInitializationException(String.format("Method %s of view interface %s doesn't comply with access fields convention (setter or getter)",
                     method.getName(), method.getClass().getName()), e);
@@ -269,6 +500,14 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
 
         protected Class<? extends BaseEntityView> replacedBy;
 
+        protected volatile ViewDispatchTable dispatchTable;
+
+        protected volatile Map<String, View> lazyViews = Collections.emptyMap();
+
+        protected volatile Set<String> splitProperties = Collections.emptySet();
+
+        protected volatile Map<String, String> computedExpressions = Collections.emptyMap();
+
         public ViewInterfaceInfo(@NotNull Class<? extends BaseEntityView> viewInterface, @NotNull Class<Entity> entityClass, Class<? extends BaseEntityView> replacedView) {
             this.viewInterface = viewInterface;
             this.entityClass = entityClass;
@@ -303,6 +542,64 @@ public class ViewsConfigurationBean implements ViewsConfiguration {
             this.view = view;
         }
 
+        /**
+         * Returns method dispatch table for the view interface. The table is built when the application context is
+         * initialized, views created earlier build it on the first call.
+         *
+         * @return Dispatch table.
+         */
+        public ViewDispatchTable getDispatchTable() {
+            ViewDispatchTable result = dispatchTable;
+            if (result == null) {
+                result = ViewDispatchTable.build(viewInterface, entityClass);
+                dispatchTable = result;
+            }
+            return result;
+        }
+
+        protected void setDispatchTable(ViewDispatchTable dispatchTable) {
+            this.dispatchTable = dispatchTable;
+        }
+
+        /**
+         * @return Views that load lazy properties by property names, the properties are not included
+         * into {@link #getView()}.
+         * @see LazyProperty
+         */
+        public Map<String, View> getLazyViews() {
+            return lazyViews;
+        }
+
+        protected void setLazyViews(Map<String, View> lazyViews) {
+            this.lazyViews = Collections.unmodifiableMap(lazyViews);
+        }
+
+        /**
+         * @return Names of collection properties that are loaded with separate queries, their views are
+         * in {@link #getLazyViews()}.
+         * @see SplitQuery
+         */
+        public Set<String> getSplitProperties() {
+            return splitProperties;
+        }
+
+        protected void setSplitProperties(Set<String> splitProperties) {
+            this.splitProperties = Collections.unmodifiableSet(splitProperties);
+        }
+
+        /**
+         * @return JPQL expressions of computed getters by property names, the entity is referred
+         * as {@link Computed#ENTITY_ALIAS}.
+         * @see Computed
+         */
+        public Map<String, String> getComputedExpressions() {
+            return computedExpressions;
+        }
+
+        protected void setComputedExpressions(Map<String, String> computedExpressions) {
+            this.computedExpressions = Collections.unmodifiableMap(computedExpressions);
+        }
+
         public String getViewName() {
             EntityViewName annotation = viewInterface.getAnnotation(EntityViewName.class);
             if ((annotation == null) || (StringUtils.isEmpty(annotation.value()))) {
@@ -0,0 +1,103 @@
+package com.haulmont.addons.cuba.entity.views.scan;
+
+import com.google.common.collect.ImmutableMap;
+import com.haulmont.addons.cuba.entity.views.BaseEntityView;
+import com.haulmont.cuba.core.global.View;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable copy of the entity views registry that is built once views are initialized. Every view interface
+ * is resolved in one step to its own definition and to the definition of its effective (substituting) view,
+ * which contain CUBA view, entity class and dispatch table. Lookups by interface go through {@link ClassValue},
+ * so they do not need hashing after the first call. The snapshot also keeps which composed CUBA views contain
+ * all attributes of other ones, so entities loaded with one view can be wrapped into another without a check.
+ */
+final class ViewsRegistrySnapshot {
+
+    /**
+     * Resolved entity view interface.
+     */
+    static final class Resolution {
+
+        private final ViewsConfigurationBean.ViewInterfaceInfo definition;
+        private final ViewsConfigurationBean.ViewInterfaceInfo effective;
+
+        Resolution(ViewsConfigurationBean.ViewInterfaceInfo definition, ViewsConfigurationBean.ViewInterfaceInfo effective) {
+            this.definition = definition;
+            this.effective = effective;
+        }
+
+        /**
+         * @return Definition of the view interface itself.
+         */
+        ViewsConfigurationBean.ViewInterfaceInfo getDefinition() {
+            return definition;
+        }
+
+        /**
+         * @return Definition of the effective view interface taking substitution into account.
+         */
+        ViewsConfigurationBean.ViewInterfaceInfo getEffective() {
+            return effective;
+        }
+    }
+
+    private final Map<Class<?>, Resolution> resolutions;
+
+    private final Map<View, ViewsConfigurationBean.ViewInterfaceInfo> definitionsByView;
+
+    private final Map<View, Set<View>> coveredViews;
+
+    private final ClassValue<Resolution> cache = new ClassValue<Resolution>() {
+        @Override
+        protected Resolution computeValue(Class<?> type) {
+            return resolutions.get(type);
+        }
+    };
+
+    ViewsRegistrySnapshot(Map<Class<?>, Resolution> resolutions,
+                          Map<View, ViewsConfigurationBean.ViewInterfaceInfo> definitionsByView,
+                          Map<View, Set<View>> coveredViews) {
+        this.resolutions = ImmutableMap.copyOf(resolutions);
+        this.definitionsByView = ImmutableMap.copyOf(definitionsByView);
+        //Containment is computed for view instances, so lookups must stay identity-based
+        Map<View, Set<View>> covered = new IdentityHashMap<>();
+        coveredViews.forEach((view, views) -> {
+            Set<View> copy = Collections.newSetFromMap(new IdentityHashMap<>());
+            copy.addAll(views);
+            covered.put(view, Collections.unmodifiableSet(copy));
+        });
+        this.coveredViews = Collections.unmodifiableMap(covered);
+    }
+
+    /**
+     * @param viewInterface Entity view interface.
+     * @return Resolved view or <code>null</code> if the interface is not registered.
+     */
+    Resolution resolve(Class<? extends BaseEntityView> viewInterface) {
+        return cache.get(viewInterface);
+    }
+
+    /**
+     * @param view CUBA view.
+     * @return Definition of the entity view which the CUBA view was created for, <code>null</code> if there is none.
+     */
+    ViewsConfigurationBean.ViewInterfaceInfo getDefinitionByView(View view) {
+        return definitionsByView.get(view);
+    }
+
+    /**
+     * @param source CUBA view an entity is loaded with.
+     * @param target Required CUBA view.
+     * @return True if both views are composed for entity views and the source view contains all attributes
+     * of the target view.
+     */
+    boolean covers(View source, View target) {
+        Set<View> covered = coveredViews.get(source);
+        return covered != null && covered.contains(target);
+    }
+}
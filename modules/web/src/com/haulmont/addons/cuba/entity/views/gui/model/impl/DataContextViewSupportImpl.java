@@ -1,14 +1,20 @@
 package com.haulmont.addons.cuba.entity.views.gui.model.impl;
 
 import com.haulmont.addons.cuba.entity.views.BaseEntityView;
-import com.haulmont.addons.cuba.entity.views.factory.EntityViewWrapper;
+import com.haulmont.addons.cuba.entity.views.factory.EntityViewFactory;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.EntitySet;
 import com.haulmont.cuba.gui.model.impl.DataContextImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -16,8 +22,47 @@ public class DataContextViewSupportImpl extends DataContextImpl {
 
     private static final Logger log = LoggerFactory.getLogger(DataContextViewSupportImpl.class);
 
+    protected final EntityViewFactory entityViewFactory;
+
+    /**
+     * Managed instances of entity views merged as a collection, grouped by view interface. They are wrapped
+     * in bulk when the whole collection is merged. <code>null</code> when a single entity is merged.
+     */
+    private Map<Class<? extends BaseEntityView>, List<Entity>> deferredViews;
+
     public DataContextViewSupportImpl(ApplicationContext applicationContext) {
         super(applicationContext);
+        this.entityViewFactory = applicationContext.getBean(EntityViewFactory.NAME, EntityViewFactory.class);
+    }
+
+    @Override
+    public EntitySet merge(Collection<? extends Entity> entities) {
+        Map<Class<? extends BaseEntityView>, List<Entity>> deferred = new LinkedHashMap<>();
+        EntitySet merged;
+        deferredViews = deferred;
+        try {
+            merged = super.merge(entities);
+        } finally {
+            deferredViews = null;
+        }
+        if (deferred.isEmpty()) {
+            return merged;
+        }
+
+        Map<Entity, Entity> views = new IdentityHashMap<>();
+        for (Map.Entry<Class<? extends BaseEntityView>, List<Entity>> entry : deferred.entrySet()) {
+            List<Entity> managed = entry.getValue();
+            //noinspection unchecked
+            List<BaseEntityView> wrapped = entityViewFactory.wrapAll((List) managed, (Class) entry.getKey());
+            for (int i = 0; i < managed.size(); i++) {
+                views.put(managed.get(i), wrapped.get(i));
+            }
+        }
+        List<Entity> result = new ArrayList<>(merged.size());
+        for (Entity managed : merged) {
+            result.add(views.getOrDefault(managed, managed));
+        }
+        return EntitySet.of(result);
     }
 
     @Override
@@ -34,13 +79,11 @@ public class DataContextViewSupportImpl extends DataContextImpl {
             }
         }
 
-        boolean isEntityView = entity instanceof BaseEntityView;
-
         mergedSet.add(entity);
 
         if (managed == null) {
 
-            Entity src = isEntityView ? ((BaseEntityView)entity).getOrigin() : entity;
+            Entity src = entityViewFactory.unwrap(entity);
 
             managed = copyEntity(src);
             entityMap.put(managed.getId(), managed);
@@ -53,7 +96,7 @@ public class DataContextViewSupportImpl extends DataContextImpl {
                 modifiedInstances.add(managed);
                 fireChangeListener(managed);
             }
-            return wrapEntity(entity, managed);
+            return wrapEntity(entity, managed, isRoot);
         } else {
             if (managed.getId() == null) {
                 throw new IllegalStateException("DataContext already contains an instance with null id: " + managed);
@@ -62,14 +105,18 @@ public class DataContextViewSupportImpl extends DataContextImpl {
             if (managed != entity) {
                 mergeState(entity, managed, mergedSet, isRoot);
             }
-            return wrapEntity(entity, managed);
+            return wrapEntity(entity, managed, isRoot);
         }
     }
 
-    private Entity wrapEntity(Entity srcEntity, Entity dst) {
+    private Entity wrapEntity(Entity srcEntity, Entity dst, boolean isRoot) {
         if (srcEntity instanceof BaseEntityView) {
             Class<? extends BaseEntityView> interfaceClass = ((BaseEntityView)srcEntity).getInterfaceClass();
-            return EntityViewWrapper.wrap(dst, interfaceClass);
+            if (isRoot && deferredViews != null) {
+                deferredViews.computeIfAbsent(interfaceClass, c -> new ArrayList<>()).add(dst);
+                return dst;
+            }
+            return entityViewFactory.wrap(dst, interfaceClass);
         } else {
             return dst;
         }